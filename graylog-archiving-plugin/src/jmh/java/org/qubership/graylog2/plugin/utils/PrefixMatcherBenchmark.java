@@ -0,0 +1,94 @@
+package org.qubership.graylog2.plugin.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of indices by masks: one pass over the names with the prefix trie against startsWith for every
+ * mask. Names look like Graylog index sets, a part of the masks shares their stems.
+ * <p>
+ * Run with: mvn -P benchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefixMatcherBenchmark {
+
+    @Param("50000")
+    private int indexCount;
+
+    @Param("500")
+    private int maskCount;
+
+    private List<String> names;
+
+    private List<String> masks;
+
+    private PrefixMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int indexSets = Math.max(1, indexCount / 100);
+        names = new ArrayList<>(indexCount);
+        for (int i = 0; i < indexCount; i++) {
+            names.add("index_set_" + random.nextInt(indexSets) + "_" + i);
+        }
+        masks = new ArrayList<>(maskCount);
+        for (int i = 0; i < maskCount; i++) {
+            masks.add(i % 2 == 0 ? "index_set_" + random.nextInt(indexSets) + "_" : "other_set_" + i + "_");
+        }
+        matcher = PrefixMatcher.compile(masks);
+    }
+
+    @Benchmark
+    public int startsWith() {
+        int matched = 0;
+        for (String name : names) {
+            if (masks.stream().anyMatch(name::startsWith)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int prefixMatcher() {
+        int matched = 0;
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int compileAndMatch() {
+        PrefixMatcher compiled = PrefixMatcher.compile(masks);
+        int matched = 0;
+        for (String name : names) {
+            if (compiled.matches(name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
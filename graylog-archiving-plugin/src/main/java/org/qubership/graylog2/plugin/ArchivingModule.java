@@ -1,14 +1,19 @@
 package org.qubership.graylog2.plugin;
 
 import com.google.inject.name.Names;
+import org.qubership.graylog2.plugin.archiving.ArchivingJobLock;
 import org.qubership.graylog2.plugin.archiving.ArchivingService;
+import org.qubership.graylog2.plugin.archiving.ElasticsearchJobLock;
+import org.qubership.graylog2.plugin.archiving.LocalJobLock;
 import org.qubership.graylog2.plugin.rest.resources.ArchivingResource;
 import org.qubership.graylog2.plugin.utils.FileProcessor;
 import org.qubership.graylog2.plugin.utils.GraylogProcessor;
+import org.qubership.graylog2.plugin.utils.RoutingJestClient;
 import io.github.acm19.aws.interceptor.http.AwsRequestSigningApacheInterceptor;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
 import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.client.http.JestHttpClient;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
@@ -20,8 +25,12 @@ import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsPro
 import software.amazon.awssdk.auth.signer.Aws4Signer;
 import software.amazon.awssdk.regions.Region;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class ArchivingModule extends PluginModule {
     private static final Logger log = LoggerFactory.getLogger(ArchivingModule.class);
@@ -30,16 +39,41 @@ public class ArchivingModule extends PluginModule {
     private static final String ELASTICSEARCH_SERVICE = "es";
     private static final String AWS_ACCESS_KEY_ID = "AWS_ACCESS_KEY_ID";
 
+    private final ArchivingPluginConfiguration configuration = new ArchivingPluginConfiguration();
+
     @Override
     public Set<? extends PluginConfigBean> getConfigBeans() {
-        return Collections.emptySet();
+        return Collections.singleton(configuration);
     }
 
     @Override
     protected void configure() {
+        bind(ArchivingPluginConfiguration.class).toInstance(configuration);
         bind(ArchivingService.class);
         bind(GraylogProcessor.class);
         bind(FileProcessor.class);
+        bindJobLock();
+        List<String> elasticSearchUrls = getElasticSearchUrls();
+        // snapshot, restore and repository requests can block for minutes, so they get their own pool and
+        // can't take the connections of quick metadata requests
+        bind(JestClient.class).annotatedWith(Names.named("ArchivingJestClient"))
+                .toInstance(createJestClient(elasticSearchUrls,
+                        configuration.getLongMaxConnectionsPerRoute(),
+                        configuration.getLongMaxConnections(),
+                        configuration.getLongReadTimeoutSeconds()));
+        bind(JestClient.class).annotatedWith(Names.named("ArchivingControlJestClient"))
+                .toInstance(createJestClient(elasticSearchUrls,
+                        configuration.getControlMaxConnectionsPerRoute(),
+                        configuration.getControlMaxConnections(),
+                        configuration.getControlReadTimeoutSeconds()));
+        bindRestResources();
+    }
+
+    /**
+     * @param readTimeoutSeconds 0 means no timeout
+     */
+    private JestClient createJestClient(List<String> elasticSearchUrls, int maxConnectionsPerRoute,
+                                        int maxConnections, int readTimeoutSeconds) {
         final JestClientFactory factory;
         if (System.getenv(AWS_ACCESS_KEY_ID) == null || System.getenv(AWS_ACCESS_KEY_ID).isEmpty()) {
             factory = new JestClientFactory();
@@ -66,30 +100,47 @@ public class ArchivingModule extends PluginModule {
             };
         }
         factory.setHttpClientConfig(
-                new HttpClientConfig.Builder(getElasticSearchUrl())
+                new HttpClientConfig.Builder(elasticSearchUrls)
                         .multiThreaded(true)
-                        .defaultMaxTotalConnectionPerRoute(2)
-                        .maxTotalConnection(10)
-                        .readTimeout(0)
+                        .defaultMaxTotalConnectionPerRoute(maxConnectionsPerRoute)
+                        .maxTotalConnection(maxConnections)
+                        .connTimeout((int) TimeUnit.SECONDS.toMillis(configuration.getConnectTimeoutSeconds()))
+                        .readTimeout((int) TimeUnit.SECONDS.toMillis(readTimeoutSeconds))
                         .build());
-        bind(JestClient.class).annotatedWith(Names.named("ArchivingJestClient"))
-                .toInstance(factory.getObject());
-        bindRestResources();
+        return new RoutingJestClient((JestHttpClient) factory.getObject(), elasticSearchUrls,
+                RoutingJestClient.Routing.parse(configuration.getElasticsearchRouting()),
+                configuration.getElasticsearchHealthCheckSeconds());
+    }
+
+    private void bindJobLock() {
+        String jobLock = configuration.getJobLock().trim().toLowerCase(Locale.ROOT);
+        if ("local".equals(jobLock)) {
+            bind(ArchivingJobLock.class).to(LocalJobLock.class);
+        } else if ("elasticsearch".equals(jobLock)) {
+            bind(ArchivingJobLock.class).to(ElasticsearchJobLock.class);
+        } else {
+            throw new IllegalArgumentException("Unknown archiving job lock: " + jobLock + ". Supported: elasticsearch, local");
+        }
     }
 
     private void bindRestResources() {
         addRestResource(ArchivingResource.class);
     }
 
-    private String getElasticSearchUrl() {
+    private List<String> getElasticSearchUrls() {
         String elasticSearchHostsString = System.getenv(ELASTICSEARCH_ENV);
-        String[] elasticSearchHosts = elasticSearchHostsString.split(",");
-        log.info("Elasticsearch host: " + elasticSearchHostsString);
-        // Currently this plugin is not support some ElasticSearch hosts, so use the first link from connection string
-        if (elasticSearchHosts.length > 0) {
-            return elasticSearchHosts[0];
-        } else {
-            return DEFAULT_ELASTICSEARCH_URL;
+        List<String> elasticSearchHosts = new ArrayList<>();
+        if (elasticSearchHostsString != null) {
+            for (String host : elasticSearchHostsString.split(",")) {
+                if (!host.trim().isEmpty()) {
+                    elasticSearchHosts.add(host.trim());
+                }
+            }
+        }
+        if (elasticSearchHosts.isEmpty()) {
+            elasticSearchHosts.add(DEFAULT_ELASTICSEARCH_URL);
         }
+        log.info("Elasticsearch hosts: " + elasticSearchHosts);
+        return elasticSearchHosts;
     }
 }
\ No newline at end of file
@@ -9,6 +9,12 @@ import java.util.Collections;
 
 public class ArchivingPlugin implements Plugin {
 
+    /**
+     * Graylog calls modules() once to read the config beans and again to install the modules, both calls must
+     * see the same configuration instance or the settings never reach the bindings.
+     */
+    private final ArchivingModule module = new ArchivingModule();
+
     @Override
     public PluginMetaData metadata() {
         return new ArchivingPluginMetaData();
@@ -16,6 +22,6 @@ public class ArchivingPlugin implements Plugin {
 
     @Override
     public Collection<PluginModule> modules() {
-        return Collections.singletonList(new ArchivingModule());
+        return Collections.singletonList(module);
     }
 }
\ No newline at end of file
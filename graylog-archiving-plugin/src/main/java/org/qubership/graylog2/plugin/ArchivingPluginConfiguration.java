@@ -0,0 +1,220 @@
+package org.qubership.graylog2.plugin;
+
+import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
+import com.github.joschi.jadconfig.validators.PositiveLongValidator;
+import org.graylog2.plugin.PluginConfigBean;
+
+/**
+ * Plugin settings read from graylog.conf (or GRAYLOG_* environment variables).
+ */
+public class ArchivingPluginConfiguration implements PluginConfigBean {
+
+    private static final long DEFAULT_MAX_SNAPSHOT_SIZE_BYTES = 100L * 1024 * 1024 * 1024;
+
+    @Parameter(value = "archiving_max_snapshot_size_bytes", validator = PositiveLongValidator.class)
+    private long maxSnapshotSizeBytes = DEFAULT_MAX_SNAPSHOT_SIZE_BYTES;
+
+    @Parameter(value = "archiving_snapshot_concurrency", validator = PositiveIntegerValidator.class)
+    private int snapshotConcurrency = 2;
+
+    @Parameter(value = "archiving_index_cache_ttl_seconds", validator = PositiveIntegerValidator.class)
+    private int indexCacheTtlSeconds = 60;
+
+    @Parameter(value = "archiving_elasticsearch_routing")
+    private String elasticsearchRouting = "least_in_flight";
+
+    @Parameter(value = "archiving_elasticsearch_health_check_seconds", validator = PositiveIntegerValidator.class)
+    private int elasticsearchHealthCheckSeconds = 10;
+
+    @Parameter(value = "archiving_elasticsearch_connect_timeout_seconds", validator = PositiveIntegerValidator.class)
+    private int connectTimeoutSeconds = 10;
+
+    @Parameter(value = "archiving_elasticsearch_long_max_connections_per_route", validator = PositiveIntegerValidator.class)
+    private int longMaxConnectionsPerRoute = 4;
+
+    @Parameter(value = "archiving_elasticsearch_long_max_connections", validator = PositiveIntegerValidator.class)
+    private int longMaxConnections = 10;
+
+    /**
+     * 0 means no timeout, snapshot and restore requests can take a long time.
+     */
+    @Parameter(value = "archiving_elasticsearch_long_read_timeout_seconds")
+    private int longReadTimeoutSeconds = 0;
+
+    @Parameter(value = "archiving_elasticsearch_control_max_connections_per_route", validator = PositiveIntegerValidator.class)
+    private int controlMaxConnectionsPerRoute = 4;
+
+    @Parameter(value = "archiving_elasticsearch_control_max_connections", validator = PositiveIntegerValidator.class)
+    private int controlMaxConnections = 20;
+
+    @Parameter(value = "archiving_elasticsearch_control_read_timeout_seconds", validator = PositiveIntegerValidator.class)
+    private int controlReadTimeoutSeconds = 60;
+
+    @Parameter(value = "archiving_process_max_finished", validator = PositiveIntegerValidator.class)
+    private int processMaxFinished = 200;
+
+    @Parameter(value = "archiving_process_retention_minutes", validator = PositiveIntegerValidator.class)
+    private int processRetentionMinutes = 60;
+
+    @Parameter(value = "archiving_process_history_size", validator = PositiveIntegerValidator.class)
+    private int processHistorySize = 10000;
+
+    @Parameter(value = "archiving_repository_health_ttl_seconds", validator = PositiveIntegerValidator.class)
+    private int repositoryHealthTtlSeconds = 300;
+
+    /**
+     * A failed repository is verified again sooner than a healthy one, so a fixed repository is usable quickly.
+     */
+    @Parameter(value = "archiving_repository_failure_ttl_seconds", validator = PositiveIntegerValidator.class)
+    private int repositoryFailureTtlSeconds = 30;
+
+    @Parameter(value = "archiving_archive_concurrency", validator = PositiveIntegerValidator.class)
+    private int archiveConcurrency = 2;
+
+    @Parameter(value = "archiving_archive_queue_size", validator = PositiveIntegerValidator.class)
+    private int archiveQueueSize = 100;
+
+    @Parameter(value = "archiving_restore_concurrency", validator = PositiveIntegerValidator.class)
+    private int restoreConcurrency = 2;
+
+    @Parameter(value = "archiving_restore_queue_size", validator = PositiveIntegerValidator.class)
+    private int restoreQueueSize = 20;
+
+    @Parameter(value = "archiving_delete_concurrency", validator = PositiveIntegerValidator.class)
+    private int deleteConcurrency = 1;
+
+    @Parameter(value = "archiving_delete_queue_size", validator = PositiveIntegerValidator.class)
+    private int deleteQueueSize = 100;
+
+    @Parameter(value = "archiving_scheduler_threads", validator = PositiveIntegerValidator.class)
+    private int schedulerThreads = 2;
+
+    /**
+     * elasticsearch: a window of a schedule registered on several Graylog nodes runs on one of them,
+     * local: every node runs its own schedules.
+     */
+    @Parameter(value = "archiving_job_lock")
+    private String jobLock = "local";
+
+    @Parameter(value = "archiving_job_lock_index")
+    private String jobLockIndex = "archiving_job_locks";
+
+    @Parameter(value = "archiving_job_lock_lease_seconds", validator = PositiveIntegerValidator.class)
+    private int jobLockLeaseSeconds = 120;
+
+    @Parameter(value = "archiving_job_lock_retention_days", validator = PositiveIntegerValidator.class)
+    private int jobLockRetentionDays = 30;
+
+    public long getMaxSnapshotSizeBytes() {
+        return maxSnapshotSizeBytes;
+    }
+
+    public int getSnapshotConcurrency() {
+        return snapshotConcurrency;
+    }
+
+    public int getIndexCacheTtlSeconds() {
+        return indexCacheTtlSeconds;
+    }
+
+    public String getElasticsearchRouting() {
+        return elasticsearchRouting;
+    }
+
+    public int getElasticsearchHealthCheckSeconds() {
+        return elasticsearchHealthCheckSeconds;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public int getLongMaxConnectionsPerRoute() {
+        return longMaxConnectionsPerRoute;
+    }
+
+    public int getLongMaxConnections() {
+        return longMaxConnections;
+    }
+
+    public int getLongReadTimeoutSeconds() {
+        return Math.max(longReadTimeoutSeconds, 0);
+    }
+
+    public int getControlMaxConnectionsPerRoute() {
+        return controlMaxConnectionsPerRoute;
+    }
+
+    public int getControlMaxConnections() {
+        return controlMaxConnections;
+    }
+
+    public int getControlReadTimeoutSeconds() {
+        return controlReadTimeoutSeconds;
+    }
+
+    public int getProcessMaxFinished() {
+        return processMaxFinished;
+    }
+
+    public int getProcessRetentionMinutes() {
+        return processRetentionMinutes;
+    }
+
+    public int getProcessHistorySize() {
+        return processHistorySize;
+    }
+
+    public int getRepositoryHealthTtlSeconds() {
+        return repositoryHealthTtlSeconds;
+    }
+
+    public int getRepositoryFailureTtlSeconds() {
+        return repositoryFailureTtlSeconds;
+    }
+
+    public int getArchiveConcurrency() {
+        return archiveConcurrency;
+    }
+
+    public int getArchiveQueueSize() {
+        return archiveQueueSize;
+    }
+
+    public int getRestoreConcurrency() {
+        return restoreConcurrency;
+    }
+
+    public int getRestoreQueueSize() {
+        return restoreQueueSize;
+    }
+
+    public int getDeleteConcurrency() {
+        return deleteConcurrency;
+    }
+
+    public int getDeleteQueueSize() {
+        return deleteQueueSize;
+    }
+
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    public String getJobLock() {
+        return jobLock;
+    }
+
+    public String getJobLockIndex() {
+        return jobLockIndex;
+    }
+
+    public int getJobLockLeaseSeconds() {
+        return jobLockLeaseSeconds;
+    }
+
+    public int getJobLockRetentionDays() {
+        return jobLockRetentionDays;
+    }
+}
@@ -0,0 +1,365 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Catalog of archives kept in memory and backed by an append-only log with one JSON entry per line:
+ * {"put": record} or {"remove": name}. The log is rewritten with the live records only once it has
+ * more than twice as many entries as there are archives.
+ */
+@Singleton
+public class ArchiveCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveCatalog.class);
+
+    private static final String CATALOG_FILE = "/usr/share/graylog/data/archives/catalog.log";
+
+    private static final String PUT = "put";
+
+    private static final String REMOVE = "remove";
+
+    private static final int MIN_ENTRIES_TO_COMPACT = 1000;
+
+    private static final Comparator<ArchiveRecord> NEWEST_FIRST = Comparator
+            .comparingLong(ArchiveRecord::getCreationTime).reversed()
+            .thenComparing(ArchiveRecord::getName);
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ArchiveRecord> byName;
+
+    private final Map<String, Set<String>> byIndex;
+
+    private final NavigableSet<ArchiveRecord> byCreationTime;
+
+    private final boolean newCatalog;
+
+    /**
+     * Sequence number of the last put or remove of an archive, by archive name. Only kept while some
+     * reconciliation is running.
+     */
+    private final Map<String, Long> changedAt;
+
+    private long sequence;
+
+    private int reconciling;
+
+    private int entries;
+
+    public ArchiveCatalog() {
+        this.file = Paths.get(CATALOG_FILE);
+        this.objectMapper = new ObjectMapper();
+        this.byName = new HashMap<>();
+        this.byIndex = new HashMap<>();
+        this.byCreationTime = new TreeSet<>(NEWEST_FIRST);
+        this.changedAt = new HashMap<>();
+        this.newCatalog = !Files.exists(file);
+        if (!newCatalog) {
+            load();
+        }
+    }
+
+    /**
+     * True if there was no catalog file on start, so archives created before it have to be imported.
+     */
+    public boolean isNew() {
+        return newCatalog;
+    }
+
+    public synchronized boolean contains(String name) {
+        return byName.containsKey(name);
+    }
+
+    public synchronized Optional<ArchiveRecord> get(String name) {
+        return Optional.ofNullable(byName.get(name));
+    }
+
+    public synchronized void put(ArchiveRecord record) {
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.set(PUT, objectMapper.valueToTree(record));
+        append(entry);
+        index(record);
+        changed(record.getName());
+        compactIfNeeded();
+    }
+
+    public synchronized void remove(String name) {
+        if (!byName.containsKey(name)) {
+            return;
+        }
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.put(REMOVE, name);
+        append(entry);
+        unindex(name);
+        changed(name);
+        compactIfNeeded();
+    }
+
+    /**
+     * Starts recording the archives put or removed from now on, so a reconciliation doesn't overwrite them
+     * with what it listed before. Must be followed by {@link #finishReconcile()}.
+     *
+     * @return the mark to pass to {@link #replaceRepository(String, Collection, long)}
+     */
+    public synchronized long startReconcile() {
+        reconciling++;
+        return sequence;
+    }
+
+    public synchronized void finishReconcile() {
+        if (--reconciling == 0) {
+            changedAt.clear();
+        }
+    }
+
+    /**
+     * Replaces every record of the repository with the given ones and compacts the log. Archives put or removed
+     * after the mark was taken are left as they are, the given records were listed before them.
+     *
+     * @param since mark returned by {@link #startReconcile()} before the repository was listed
+     */
+    public synchronized void replaceRepository(String repository, Collection<ArchiveRecord> records, long since) {
+        List<String> stale = new ArrayList<>();
+        for (ArchiveRecord record : byName.values()) {
+            if (repository.equals(record.getRepository()) && !changedSince(record.getName(), since)) {
+                stale.add(record.getName());
+            }
+        }
+        stale.forEach(this::unindex);
+        for (ArchiveRecord record : records) {
+            if (!changedSince(record.getName(), since)) {
+                index(record);
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Archives ordered from the newest to the oldest.
+     *
+     * @param index archives which contain this index, any archive if null
+     * @param from  archives created at or after this time in millis, no lower bound if null
+     * @param to    archives created at or before this time in millis, no upper bound if null
+     */
+    public synchronized Page find(String index, Long from, Long to, int offset, int limit) {
+        Collection<ArchiveRecord> candidates = byCreationTime;
+        if (index != null) {
+            candidates = new TreeSet<>(NEWEST_FIRST);
+            for (String name : byIndex.getOrDefault(index, Collections.emptySet())) {
+                candidates.add(byName.get(name));
+            }
+        }
+        List<ArchiveRecord> page = new ArrayList<>();
+        int total = 0;
+        for (ArchiveRecord record : candidates) {
+            if ((from != null && record.getCreationTime() < from) || (to != null && record.getCreationTime() > to)) {
+                continue;
+            }
+            if (total >= offset && page.size() < limit) {
+                page.add(record);
+            }
+            total++;
+        }
+        return new Page(total, offset, limit, page);
+    }
+
+    /**
+     * Repository name to the statistics of its archives which have stats, ordered by repository name.
+     *
+     * @param repository only this repository, any repository if null
+     * @param from       archives created at or after this time in millis, no lower bound if null
+     * @param to         archives created at or before this time in millis, no upper bound if null
+     */
+    public synchronized Map<String, ArchiveStatistics.Summary> statistics(String repository, Long from, Long to) {
+        Map<String, ArchiveStatistics.Summary> summaries = new TreeMap<>();
+        for (ArchiveRecord record : byCreationTime) {
+            if (record.getStatistics() == null || record.getRepository() == null
+                    || (repository != null && !repository.equals(record.getRepository()))
+                    || (from != null && record.getCreationTime() < from) || (to != null && record.getCreationTime() > to)) {
+                continue;
+            }
+            summaries.computeIfAbsent(record.getRepository(), k -> new ArchiveStatistics.Summary())
+                    .add(record.getStatistics());
+        }
+        return summaries;
+    }
+
+    private void changed(String name) {
+        sequence++;
+        if (reconciling > 0) {
+            changedAt.put(name, sequence);
+        }
+    }
+
+    private boolean changedSince(String name, long since) {
+        return changedAt.getOrDefault(name, 0L) > since;
+    }
+
+    private void index(ArchiveRecord record) {
+        unindex(record.getName());
+        byName.put(record.getName(), record);
+        byCreationTime.add(record);
+        for (String index : record.getIndices().keySet()) {
+            byIndex.computeIfAbsent(index, k -> new HashSet<>()).add(record.getName());
+        }
+    }
+
+    private void unindex(String name) {
+        ArchiveRecord record = byName.remove(name);
+        if (record == null) {
+            return;
+        }
+        byCreationTime.remove(record);
+        for (String index : record.getIndices().keySet()) {
+            Set<String> names = byIndex.get(index);
+            if (names != null) {
+                names.remove(name);
+                if (names.isEmpty()) {
+                    byIndex.remove(index);
+                }
+            }
+        }
+    }
+
+    private void load() {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                entries++;
+                JsonNode entry;
+                try {
+                    entry = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // the last line can be cut if the node stopped in the middle of a write
+                    log.warn("Skip broken entry of archive catalog: " + e.getMessage());
+                    continue;
+                }
+                if (entry.has(PUT)) {
+                    index(objectMapper.treeToValue(entry.get(PUT), ArchiveRecord.class));
+                } else if (entry.has(REMOVE)) {
+                    unindex(entry.get(REMOVE).asText());
+                }
+            }
+            log.info("Archive catalog is loaded: " + byName.size() + " archives");
+        } catch (IOException e) {
+            // the catalog can be rebuilt with reconciliation, so the plugin still starts
+            log.error("Error during reading archive catalog: " + e.getMessage(), e);
+        }
+        compactIfNeeded();
+    }
+
+    private void append(JsonNode entry) {
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, Collections.singletonList(objectMapper.writeValueAsString(entry)), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            entries++;
+        } catch (IOException e) {
+            log.error("Error during writing archive catalog: " + e.getMessage(), e);
+            throw new RuntimeException("Error during writing archive catalog." + "\n" +
+                    "Reason: " + e.getMessage(), e);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (entries > MIN_ENTRIES_TO_COMPACT && entries > 2 * byName.size()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                Iterator<ArchiveRecord> records = byCreationTime.descendingIterator();
+                while (records.hasNext()) {
+                    ObjectNode entry = objectMapper.createObjectNode();
+                    entry.set(PUT, objectMapper.valueToTree(records.next()));
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entries = byName.size();
+            log.debug("Archive catalog is compacted to " + entries + " entries");
+        } catch (IOException e) {
+            log.error("Error during compacting archive catalog: " + e.getMessage(), e);
+            throw new RuntimeException("Error during compacting archive catalog." + "\n" +
+                    "Reason: " + e.getMessage(), e);
+        }
+    }
+
+    public static class Page {
+
+        private final int total;
+
+        private final int offset;
+
+        private final int limit;
+
+        private final List<ArchiveRecord> archives;
+
+        private Page(int total, int offset, int limit, List<ArchiveRecord> archives) {
+            this.total = total;
+            this.offset = offset;
+            this.limit = limit;
+            this.archives = archives;
+        }
+
+        @JsonProperty("total")
+        public int getTotal() {
+            return total;
+        }
+
+        @JsonProperty("offset")
+        public int getOffset() {
+            return offset;
+        }
+
+        @JsonProperty("limit")
+        public int getLimit() {
+            return limit;
+        }
+
+        @JsonProperty("archives")
+        public List<ArchiveRecord> getArchives() {
+            return archives;
+        }
+    }
+}
@@ -1,26 +1,77 @@
 package org.qubership.graylog2.plugin.archiving;
 
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 public class ArchiveInfo {
 
+    private static final Logger log = LoggerFactory.getLogger(ArchiveInfo.class);
+
+    public static final String STATUS_SUCCESS = "Success";
+
+    public static final String STATUS_FAILED = "Failed";
+
+    public enum Type {
+        ARCHIVE, RESTORE, DELETE, RECONCILE, BATCH
+    }
+
+    public enum State {
+        RUNNING, SUCCESS, FAILED
+    }
+
     private final String id;
 
+    private final Type type;
+
     private final Date startTime;
 
     private volatile String status;
 
     private volatile String result;
 
-    public ArchiveInfo(String id, Date startTime) {
+    private volatile RestoreProgress progress;
+
+    private volatile BatchProgress batch;
+
+    private volatile Date endTime;
+
+    private volatile State state;
+
+    private volatile String lane;
+
+    private volatile IntSupplier laneDepth;
+
+    private volatile long queuedAt;
+
+    private volatile long dequeuedAt;
+
+    private final List<Consumer<ArchiveInfo>> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public ArchiveInfo(String id, Type type, Date startTime) {
         this.id = id;
+        this.type = type;
         this.startTime = startTime;
+        this.state = State.RUNNING;
     }
 
     public String getId() {
         return id;
     }
 
+    public Type getType() {
+        return type;
+    }
+
     public Date getStartTime() {
         return startTime;
     }
@@ -33,11 +84,130 @@ public class ArchiveInfo {
         return result;
     }
 
+    public RestoreProgress getProgress() {
+        return progress;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state != State.RUNNING;
+    }
+
     public void setStatus(String status) {
         this.status = status;
+        notifyListeners();
     }
 
     public void setResult(String result) {
         this.result = result;
     }
+
+    public void setProgress(RestoreProgress progress) {
+        this.progress = progress;
+        notifyListeners();
+    }
+
+    void setBatch(BatchProgress batch) {
+        this.batch = batch;
+    }
+
+    void queued(String lane, IntSupplier laneDepth) {
+        this.lane = lane;
+        this.laneDepth = laneDepth;
+        this.queuedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return how long the process waited in the queue of its lane in millis
+     */
+    long dequeued() {
+        dequeuedAt = System.currentTimeMillis();
+        return dequeuedAt - queuedAt;
+    }
+
+    /**
+     * Listener is called on the thread that changed the process, so it must not block.
+     */
+    public void addListener(Consumer<ArchiveInfo> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<ArchiveInfo> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Number of changes the listeners were notified about.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private void notifyListeners() {
+        version.incrementAndGet();
+        for (Consumer<ArchiveInfo> listener : listeners) {
+            try {
+                listener.accept(this);
+            } catch (RuntimeException e) {
+                log.warn("Process listener failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public void complete(String result) {
+        finish(State.SUCCESS, STATUS_SUCCESS, result);
+    }
+
+    public void fail(String reason) {
+        finish(State.FAILED, STATUS_FAILED, reason);
+    }
+
+    private void finish(State state, String status, String result) {
+        this.result = result;
+        this.status = status;
+        this.endTime = new Date();
+        this.state = state;
+        notifyListeners();
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("type", type.name());
+        json.put("state", state.name());
+        json.put("startTime", startTime.toString());
+        json.put("startTimeMillis", startTime.getTime());
+        if (endTime != null) {
+            json.put("endTime", endTime.toString());
+            json.put("endTimeMillis", endTime.getTime());
+        }
+        json.put("status", status);
+        if (result != null) {
+            json.put("result", result);
+        }
+        if (progress != null) {
+            json.put("progress", progress.toJson());
+        }
+        if (batch != null) {
+            json.put("items", batch.toJson());
+        }
+        if (lane != null) {
+            JSONObject queue = new JSONObject();
+            queue.put("lane", lane);
+            queue.put("waiting", dequeuedAt == 0);
+            queue.put("waitMillis", (dequeuedAt == 0 ? System.currentTimeMillis() : dequeuedAt) - queuedAt);
+            if (!isFinished()) {
+                queue.put("depth", laneDepth.getAsInt());
+            }
+            json.put("queue", queue);
+        }
+        return json;
+    }
 }
@@ -0,0 +1,186 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.qubership.graylog2.plugin.utils.SnapshotSummary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog entry of one archive. Immutable, a changed archive is stored as a new record.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ArchiveRecord {
+
+    private final String name;
+
+    private final String storageId;
+
+    private final String repository;
+
+    private final List<String> snapshots;
+
+    private final Map<String, ArchivedIndex> indices;
+
+    private final long sizeBytes;
+
+    private final long creationTime;
+
+    private final ArchiveStatistics statistics;
+
+    @JsonCreator
+    public ArchiveRecord(@JsonProperty("name") String name,
+                         @JsonProperty("storageId") String storageId,
+                         @JsonProperty("repository") String repository,
+                         @JsonProperty("snapshots") List<String> snapshots,
+                         @JsonProperty("indices") Map<String, ArchivedIndex> indices,
+                         @JsonProperty("sizeBytes") long sizeBytes,
+                         @JsonProperty("creationTime") long creationTime,
+                         @JsonProperty("statistics") ArchiveStatistics statistics) {
+        this.name = name;
+        this.storageId = storageId;
+        this.repository = repository;
+        this.snapshots = snapshots == null ? Collections.emptyList() : Collections.unmodifiableList(snapshots);
+        this.indices = indices == null ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(indices));
+        this.sizeBytes = sizeBytes;
+        this.creationTime = creationTime;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Builds a record from the snapshots of the archive, statistics are taken from their stats if any.
+     *
+     * @param indexMetadata metadata of the archived indices, missing indices get an unknown size and time range
+     */
+    public static ArchiveRecord create(String name, String storageId, String repository,
+                                       Collection<SnapshotSummary> snapshots, Map<String, ArchivedIndex> indexMetadata,
+                                       long creationTime) {
+        List<String> snapshotNames = new ArrayList<>();
+        Map<String, ArchivedIndex> indices = new LinkedHashMap<>();
+        long sizeBytes = 0;
+        for (SnapshotSummary snapshot : snapshots) {
+            snapshotNames.add(snapshot.getName());
+            sizeBytes += snapshot.getTotalSizeBytes();
+            for (String index : snapshot.getIndices()) {
+                indices.put(index, indexMetadata.getOrDefault(index, ArchivedIndex.UNKNOWN));
+            }
+        }
+        return new ArchiveRecord(name, storageId, repository, snapshotNames, indices, sizeBytes, creationTime,
+                ArchiveStatistics.of(snapshots));
+    }
+
+    @JsonProperty("name")
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty("storageId")
+    public String getStorageId() {
+        return storageId;
+    }
+
+    @JsonProperty("repository")
+    public String getRepository() {
+        return repository;
+    }
+
+    @JsonProperty("snapshots")
+    public List<String> getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Index name to its metadata at the time of archiving.
+     */
+    @JsonProperty("indices")
+    public Map<String, ArchivedIndex> getIndices() {
+        return indices;
+    }
+
+    /**
+     * Size of the snapshots in the repository.
+     */
+    @JsonProperty("sizeBytes")
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @JsonProperty("creationTime")
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Snapshot stats at the time of archiving, null if they are unknown.
+     */
+    @JsonProperty("statistics")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public ArchiveStatistics getStatistics() {
+        return statistics;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ArchivedIndex {
+
+        static final ArchivedIndex UNKNOWN = new ArchivedIndex(0, null, null);
+
+        private final long sizeBytes;
+
+        private final Long minTimestamp;
+
+        private final Long maxTimestamp;
+
+        @JsonCreator
+        public ArchivedIndex(@JsonProperty("sizeBytes") long sizeBytes,
+                             @JsonProperty("minTimestamp") Long minTimestamp,
+                             @JsonProperty("maxTimestamp") Long maxTimestamp) {
+            this.sizeBytes = sizeBytes;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        /**
+         * store.size of the index when it was archived, 0 if it's unknown.
+         */
+        @JsonProperty("sizeBytes")
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        /**
+         * Oldest message timestamp in millis, null if it's unknown or the index was empty.
+         */
+        @JsonProperty("minTimestamp")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        /**
+         * Newest message timestamp in millis, null if it's unknown or the index was empty.
+         */
+        @JsonProperty("maxTimestamp")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        /**
+         * Whether the index may contain messages between from and to (inclusive). Indices without a known
+         * range always overlap, so they are never skipped by mistake.
+         */
+        public boolean overlaps(long from, long to) {
+            if (minTimestamp == null || maxTimestamp == null) {
+                return true;
+            }
+            return maxTimestamp >= from && minTimestamp <= to;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.qubership.graylog2.plugin.utils.SnapshotSummary;
+
+import java.util.Collection;
+
+/**
+ * Snapshot stats of one archive. The rate is computed from the incremental size, which is what was really
+ * written to the repository, and the wall-clock time from the first snapshot start to the last snapshot end.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ArchiveStatistics {
+
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private final long totalFileCount;
+
+    private final long incrementalFileCount;
+
+    private final long totalSizeBytes;
+
+    private final long incrementalSizeBytes;
+
+    private final long startTimeMillis;
+
+    private final long elapsedMillis;
+
+    @JsonCreator
+    public ArchiveStatistics(@JsonProperty("totalFileCount") long totalFileCount,
+                             @JsonProperty("incrementalFileCount") long incrementalFileCount,
+                             @JsonProperty("totalSizeBytes") long totalSizeBytes,
+                             @JsonProperty("incrementalSizeBytes") long incrementalSizeBytes,
+                             @JsonProperty("startTimeMillis") long startTimeMillis,
+                             @JsonProperty("elapsedMillis") long elapsedMillis) {
+        this.totalFileCount = totalFileCount;
+        this.incrementalFileCount = incrementalFileCount;
+        this.totalSizeBytes = totalSizeBytes;
+        this.incrementalSizeBytes = incrementalSizeBytes;
+        this.startTimeMillis = startTimeMillis;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Statistics of the snapshots of one archive, null if none of them has stats.
+     */
+    public static ArchiveStatistics of(Collection<SnapshotSummary> snapshots) {
+        long totalFiles = 0;
+        long incrementalFiles = 0;
+        long totalSize = 0;
+        long incrementalSize = 0;
+        long start = Long.MAX_VALUE;
+        long end = 0;
+        boolean found = false;
+        for (SnapshotSummary snapshot : snapshots) {
+            if (!snapshot.hasStats()) {
+                continue;
+            }
+            found = true;
+            totalFiles += snapshot.getTotalFileCount();
+            incrementalFiles += snapshot.getIncrementalFileCount();
+            totalSize += snapshot.getTotalSizeBytes();
+            incrementalSize += snapshot.getIncrementalSizeBytes();
+            start = Math.min(start, snapshot.getStartTimeMillis());
+            end = Math.max(end, snapshot.getStartTimeMillis() + snapshot.getTimeMillis());
+        }
+        if (!found) {
+            return null;
+        }
+        return new ArchiveStatistics(totalFiles, incrementalFiles, totalSize, incrementalSize, start, end - start);
+    }
+
+    @JsonProperty("totalFileCount")
+    public long getTotalFileCount() {
+        return totalFileCount;
+    }
+
+    @JsonProperty("incrementalFileCount")
+    public long getIncrementalFileCount() {
+        return incrementalFileCount;
+    }
+
+    @JsonProperty("totalSizeBytes")
+    public long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    @JsonProperty("incrementalSizeBytes")
+    public long getIncrementalSizeBytes() {
+        return incrementalSizeBytes;
+    }
+
+    @JsonProperty("startTimeMillis")
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    @JsonProperty("elapsedMillis")
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @JsonProperty("megabytesPerSecond")
+    public double getMegabytesPerSecond() {
+        return megabytesPerSecond(incrementalSizeBytes, elapsedMillis);
+    }
+
+    static double megabytesPerSecond(long bytes, long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return bytes / BYTES_IN_MEGABYTE / (millis / 1000.0);
+    }
+
+    /**
+     * Statistics of all archives of one repository.
+     */
+    public static class Summary {
+
+        private int archives;
+
+        private long incrementalSizeBytes;
+
+        private long elapsedMillis;
+
+        private double minMegabytesPerSecond = Double.MAX_VALUE;
+
+        private double maxMegabytesPerSecond;
+
+        private long lastArchiveTime;
+
+        void add(ArchiveStatistics statistics) {
+            archives++;
+            incrementalSizeBytes += statistics.incrementalSizeBytes;
+            elapsedMillis += statistics.elapsedMillis;
+            minMegabytesPerSecond = Math.min(minMegabytesPerSecond, statistics.getMegabytesPerSecond());
+            maxMegabytesPerSecond = Math.max(maxMegabytesPerSecond, statistics.getMegabytesPerSecond());
+            lastArchiveTime = Math.max(lastArchiveTime, statistics.startTimeMillis);
+        }
+
+        @JsonProperty("archives")
+        public int getArchives() {
+            return archives;
+        }
+
+        @JsonProperty("incrementalSizeBytes")
+        public long getIncrementalSizeBytes() {
+            return incrementalSizeBytes;
+        }
+
+        @JsonProperty("elapsedMillis")
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Rate of all archives together, so big archives weigh more than small ones.
+         */
+        @JsonProperty("megabytesPerSecond")
+        public double getMegabytesPerSecond() {
+            return megabytesPerSecond(incrementalSizeBytes, elapsedMillis);
+        }
+
+        @JsonProperty("minMegabytesPerSecond")
+        public double getMinMegabytesPerSecond() {
+            return archives == 0 ? 0 : minMegabytesPerSecond;
+        }
+
+        @JsonProperty("maxMegabytesPerSecond")
+        public double getMaxMegabytesPerSecond() {
+            return maxMegabytesPerSecond;
+        }
+
+        @JsonProperty("lastArchiveTime")
+        public long getLastArchiveTime() {
+            return lastArchiveTime;
+        }
+    }
+}
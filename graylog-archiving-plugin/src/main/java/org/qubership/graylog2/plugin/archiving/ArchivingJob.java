@@ -1,38 +1,50 @@
 package org.qubership.graylog2.plugin.archiving;
 
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
-import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-
+/**
+ * One fire of a schedule. Fires of the same schedule are never executed at the same time, so the cron fire
+ * and the run of a missed window can't both start an archive.
+ */
+@DisallowConcurrentExecution
 public class ArchivingJob implements Job {
 
     private static final Logger log = LoggerFactory.getLogger(ArchivingService.class);
 
+    static final String SCHEDULE = "schedule";
+
+    /**
+     * Scheduled time of a missed window which is run later, the scheduled fire time is used otherwise.
+     */
+    static final String WINDOW = "window";
+
+    private final ArchivingService service;
+
+    ArchivingJob(ArchivingService service) {
+        this.service = service;
+    }
+
     public void execute(JobExecutionContext context) {
-        JobDataMap dataMap = context.getJobDetail().getJobDataMap();
-        String time = dataMap.getString("time");
-        String archiveName = dataMap.getString("name");
-        String storageId = dataMap.getString("storageId");
-        List<String> indices = (List<String>) dataMap.get("indices");
-        List<String> masks = (List<String>) dataMap.get("masks");
-        ArchivingService service = (ArchivingService) dataMap.get("service");
-
-        Timestamp ts = new Timestamp(new Date().getTime());
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd_HHmmss");
-        String name = archiveName + "_" + formatter.format(ts);
-        List<String> indicesByParams = service.getIndices(time, masks);
-        HashSet<String> mergedIndices = new HashSet<>();
-        mergedIndices.addAll(indices);
-        mergedIndices.addAll(indicesByParams);
-        log.info("Try to create archive with name: " + name + " for indices " + mergedIndices);
-        log.info("Process id for created archive: " + service.archive(storageId, name, mergedIndices));
+        String scheduleName = context.getJobDetail().getJobDataMap().getString(SCHEDULE);
+        Schedule schedule = service.getSchedule(scheduleName).orElse(null);
+        if (schedule == null) {
+            log.warn("Schedule " + scheduleName + " doesn't exist anymore, skip the run");
+            return;
+        }
+        if (context.getScheduledFireTime() != null) {
+            service.getMetrics().jobFired(context.getFireTime().getTime() - context.getScheduledFireTime().getTime());
+        }
+        service.scheduleFired(scheduleName, context.getFireTime().getTime());
+        long window = context.getMergedJobDataMap().containsKey(WINDOW)
+                ? context.getMergedJobDataMap().getLong(WINDOW)
+                : context.getScheduledFireTime().getTime();
+        if (!service.claimWindow(scheduleName, window)) {
+            return;
+        }
+        service.runSchedule(schedule, window);
     }
 }
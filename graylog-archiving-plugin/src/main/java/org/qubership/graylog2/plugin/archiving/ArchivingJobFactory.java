@@ -0,0 +1,28 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.quartz.Job;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.spi.JobFactory;
+import org.quartz.spi.TriggerFiredBundle;
+
+/**
+ * Creates archiving jobs with the service, so the job data keeps only plain values.
+ */
+class ArchivingJobFactory implements JobFactory {
+
+    private final ArchivingService service;
+
+    ArchivingJobFactory(ArchivingService service) {
+        this.service = service;
+    }
+
+    @Override
+    public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler) throws SchedulerException {
+        Class<? extends Job> jobClass = bundle.getJobDetail().getJobClass();
+        if (jobClass != ArchivingJob.class) {
+            throw new SchedulerException("Unknown job class: " + jobClass.getName());
+        }
+        return new ArchivingJob(service);
+    }
+}
@@ -0,0 +1,38 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import java.util.OptionalLong;
+
+/**
+ * Decides which Graylog node runs a window of a schedule which is registered on several nodes. Every node
+ * fires its own trigger and only the first one which claims the window runs it, so a window still runs if
+ * some of the nodes are down.
+ */
+public interface ArchivingJobLock {
+
+    /**
+     * @param schedule name of the schedule
+     * @param window   time the window was scheduled at, the same on every node
+     * @return true if this node has to run the window, false if it's already claimed
+     */
+    boolean claim(String schedule, long window);
+
+    /**
+     * Called once before the schedules are restored.
+     */
+    default void start() {
+    }
+
+    /**
+     * @return when a window which another node claimed and still runs has to be claimed again, so it's taken
+     * over if that node dies; empty if the window is done or the lock doesn't expire claims
+     */
+    default OptionalLong retryAt(String schedule, long window) {
+        return OptionalLong.empty();
+    }
+
+    /**
+     * The run of a claimed window is finished or won't start, the window is not claimed again.
+     */
+    default void release(String schedule, long window) {
+    }
+}
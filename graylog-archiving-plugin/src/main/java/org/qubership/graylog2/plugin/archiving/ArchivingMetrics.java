@@ -0,0 +1,114 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Metrics of archive, restore and delete processes registered in the Graylog metric registry under
+ * org.qubership.graylog2.plugin.archiving, for example org.qubership.graylog2.plugin.archiving.archive.snapshots.
+ */
+@Singleton
+public class ArchivingMetrics {
+
+    private static final String PREFIX = "org.qubership.graylog2.plugin.archiving";
+
+    private final MetricRegistry metricRegistry;
+
+    @Inject
+    public ArchivingMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Starts the timer of one phase of a process, the phase ends when the returned context is stopped.
+     */
+    public Timer.Context startPhase(ArchiveInfo.Type type, String phase) {
+        return metricRegistry.timer(name(type, phase)).time();
+    }
+
+    /**
+     * Counts the process as succeeded or failed and records its total duration once it's finished.
+     */
+    public void track(ArchiveInfo info) {
+        info.addListener(new Consumer<ArchiveInfo>() {
+            @Override
+            public void accept(ArchiveInfo changed) {
+                if (!changed.isFinished()) {
+                    return;
+                }
+                changed.removeListener(this);
+                boolean succeeded = changed.getState() == ArchiveInfo.State.SUCCESS;
+                metricRegistry.meter(name(changed.getType(), succeeded ? "succeeded" : "failed")).mark();
+                metricRegistry.timer(name(changed.getType(), "total")).update(
+                        changed.getEndTime().getTime() - changed.getStartTime().getTime(), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Records the rate of one finished snapshot from the incremental size in its stats, which is what was copied.
+     */
+    public void snapshotCompleted(long bytes, long millis) {
+        metricRegistry.meter(name(ArchiveInfo.Type.ARCHIVE, "bytes")).mark(bytes);
+        if (millis > 0) {
+            metricRegistry.histogram(name(ArchiveInfo.Type.ARCHIVE, "bytesPerSecond")).update(bytes * 1000 / millis);
+        }
+    }
+
+    /**
+     * Records the rate of the recovery of all indices of one restore.
+     */
+    public void recoveryCompleted(long bytes, long millis) {
+        metricRegistry.meter(name(ArchiveInfo.Type.RESTORE, "bytes")).mark(bytes);
+        if (millis > 0) {
+            metricRegistry.histogram(name(ArchiveInfo.Type.RESTORE, "bytesPerSecond")).update(bytes * 1000 / millis);
+        }
+    }
+
+    /**
+     * Records how late a scheduled job was fired compared to its trigger time.
+     */
+    public void jobFired(long lagMillis) {
+        metricRegistry.histogram(MetricRegistry.name(PREFIX, "schedule", "lagMillis")).update(lagMillis);
+    }
+
+    /**
+     * Records the duration and the outcome of one repository verification.
+     */
+    public void repositoryVerified(long millis, boolean healthy) {
+        metricRegistry.timer(MetricRegistry.name(PREFIX, "repository", "verify")).update(millis, TimeUnit.MILLISECONDS);
+        if (!healthy) {
+            metricRegistry.meter(MetricRegistry.name(PREFIX, "repository", "verifyFailed")).mark();
+        }
+    }
+
+    /**
+     * Records how long a process waited for a worker of its lane.
+     */
+    public void laneWaited(String lane, long millis) {
+        metricRegistry.timer(MetricRegistry.name(PREFIX, "lane", lane, "wait")).update(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void monitorExecutor(String executor, ThreadPoolExecutor threadPool) {
+        register(MetricRegistry.name(PREFIX, executor, "queueSize"), () -> threadPool.getQueue().size());
+        register(MetricRegistry.name(PREFIX, executor, "activeWorkers"), threadPool::getActiveCount);
+    }
+
+    private void register(String name, Gauge<Integer> gauge) {
+        // the plugin module can be created again in the same JVM, the newest executor wins
+        metricRegistry.remove(name);
+        metricRegistry.register(name, gauge);
+    }
+
+    private static String name(ArchiveInfo.Type type, String metric) {
+        return MetricRegistry.name(PREFIX, type.name().toLowerCase(Locale.ROOT), metric);
+    }
+}
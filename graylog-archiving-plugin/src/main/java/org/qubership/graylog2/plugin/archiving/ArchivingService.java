@@ -1,15 +1,25 @@
 package org.qubership.graylog2.plugin.archiving;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
 import org.qubership.graylog2.plugin.utils.GraylogProcessor;
 import org.qubership.graylog2.plugin.utils.ParametersProcessor;
+import org.qubership.graylog2.plugin.utils.PrefixMatcher;
+import org.qubership.graylog2.plugin.utils.RoutingJestClient;
+import org.qubership.graylog2.plugin.utils.SnapshotSummary;
 import org.qubership.graylog2.plugin.utils.TimeUnitProcessor;
+import io.searchbox.action.Action;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Cat;
+import io.searchbox.core.Ping;
 import io.searchbox.snapshot.*;
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
@@ -19,16 +29,18 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Singleton
 public class ArchivingService {
@@ -37,11 +49,20 @@ public class ArchivingService {
 
     private static final String DEFAULT_S3CLIENT = "default";
 
+    private static final int MAX_CACHED_MATCHERS = 100;
+
+    private static final String STATE_SUCCESS = "SUCCESS";
+
+    /**
+     * Keeps the URI of a combined snapshot deletion short.
+     */
+    private static final int MAX_SNAPSHOTS_PER_DELETE = 50;
+
     private final String snapshotDirectory = System.getenv("GRAYLOG_SNAPSHOT_DIRECTORY");
 
-    private static final String directoriesFile = "/usr/share/graylog/data/config/directories.json";
+    private final RepositoryRegistry repositoryRegistry;
 
-    private Map<String, String> directories;
+    private final RepositoryHealthCache repositoryHealth;
 
     private final GraylogProcessor graylogProcessor;
 
@@ -51,195 +72,868 @@ public class ArchivingService {
 
     private final JestClient jestClient;
 
-    private final Map<String, ArchiveInfo> processes;
+    private final JestClient controlJestClient;
+
+    private final SnapshotPoller snapshotPoller;
+
+    private final SnapshotPlanner snapshotPlanner;
+
+    private final RestoreTracker restoreTracker;
+
+    private final IndexMetadataCache indexMetadataCache;
+
+    private final ElasticsearchStreamReader streamReader;
+
+    private final ArchiveCatalog archiveCatalog;
+
+    private final TimestampRangeCollector timestampRangeCollector;
+
+    private final ArchivingPluginConfiguration configuration;
+
+    private final LoadingCache<List<String>, PrefixMatcher> matchers;
+
+    private final ProcessRegistry processRegistry;
+
+    private final ExecutionLane archiveLane;
+
+    private final ExecutionLane restoreLane;
+
+    /**
+     * Deletes, catalog reconciliation and import of info files.
+     */
+    private final ExecutionLane deleteLane;
 
-    private final ExecutorService executorService;
+    private final ArchivingMetrics metrics;
+
+    private final ScheduleStore scheduleStore;
+
+    private final RepositoryCoordinator coordinator;
+
+    private final ArchivingJobLock jobLock;
+
+    private final ScheduleRuns scheduleRuns;
 
     private final Scheduler scheduler;
 
+    private volatile Boolean multiSnapshotDelete;
+
     @Inject
     public ArchivingService(GraylogProcessor graylogProcessor,
-                            ParametersProcessor parametersProcessor, TimeUnitProcessor timeUnitProcessor, @Named("ArchivingJestClient") JestClient jestClient) throws SchedulerException {
+                            ParametersProcessor parametersProcessor, TimeUnitProcessor timeUnitProcessor, @Named("ArchivingJestClient") JestClient jestClient,
+                            @Named("ArchivingControlJestClient") JestClient controlJestClient,
+                            SnapshotPoller snapshotPoller, SnapshotPlanner snapshotPlanner, RestoreTracker restoreTracker,
+                            IndexMetadataCache indexMetadataCache, ElasticsearchStreamReader streamReader,
+                            ArchiveCatalog archiveCatalog, TimestampRangeCollector timestampRangeCollector,
+                            ProcessRegistry processRegistry, ArchivingMetrics metrics,
+                            RepositoryRegistry repositoryRegistry, RepositoryHealthCache repositoryHealth,
+                            ScheduleStore scheduleStore, ScheduleRuns scheduleRuns, ArchivingJobLock jobLock,
+                            RepositoryCoordinator coordinator,
+                            ArchivingPluginConfiguration configuration) throws SchedulerException {
         this.graylogProcessor = graylogProcessor;
         this.parametersProcessor = parametersProcessor;
         this.timeUnitProcessor = timeUnitProcessor;
-        this.processes = new ConcurrentHashMap<>();
-        this.directories = readDirectoriesFile();
-        this.executorService = Executors.newFixedThreadPool(3);
+        this.processRegistry = processRegistry;
+        this.matchers = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_MATCHERS)
+                .build(CacheLoader.from(PrefixMatcher::compile));
+        this.repositoryRegistry = repositoryRegistry;
+        this.repositoryHealth = repositoryHealth;
+        this.metrics = metrics;
+        this.archiveLane = new ExecutionLane("archive", configuration.getArchiveConcurrency(),
+                configuration.getArchiveQueueSize(), metrics);
+        this.restoreLane = new ExecutionLane("restore", configuration.getRestoreConcurrency(),
+                configuration.getRestoreQueueSize(), metrics);
+        this.deleteLane = new ExecutionLane("delete", configuration.getDeleteConcurrency(),
+                configuration.getDeleteQueueSize(), metrics);
         this.jestClient = jestClient;
-        this.scheduler = new StdSchedulerFactory().getScheduler();
+        this.controlJestClient = controlJestClient;
+        this.snapshotPoller = snapshotPoller;
+        this.snapshotPlanner = snapshotPlanner;
+        this.restoreTracker = restoreTracker;
+        this.indexMetadataCache = indexMetadataCache;
+        this.streamReader = streamReader;
+        this.archiveCatalog = archiveCatalog;
+        this.timestampRangeCollector = timestampRangeCollector;
+        this.configuration = configuration;
+        this.scheduleStore = scheduleStore;
+        this.scheduleRuns = scheduleRuns;
+        this.jobLock = jobLock;
+        this.coordinator = coordinator;
+        this.scheduler = new StdSchedulerFactory(schedulerProperties(configuration)).getScheduler();
+        this.scheduler.setJobFactory(new ArchivingJobFactory(this));
+        jobLock.start();
+        restoreSchedules();
         this.scheduler.start();
+        if (archiveCatalog.isNew()) {
+            deleteLane.continuations().execute(this::importInfoFiles);
+        }
     }
 
-    public static JSONObject parseJSONFile(String filename) throws JSONException, IOException {
-        String content = new String(Files.readAllBytes(Paths.get(filename)));
-        return new JSONObject(content);
+    public Map<String, String> reloadDirectoriesFile() {
+        return repositoryRegistry.reload();
     }
 
-    public static HashMap<String, String> readDirectoriesFile() {
-        HashMap<String, String> map = new HashMap<>();
-        try {
-            JSONObject jsonObject = parseJSONFile(directoriesFile);
-            ObjectMapper mapper = new ObjectMapper();
-            map = mapper.readValue(jsonObject.toString(), HashMap.class);
-        } catch (JSONException | IOException e) {
-            e.printStackTrace();
-        }
-        return map;
+    public ArchiveInfo getArchiveProcessInfo(String id) {
+        return processRegistry.get(id);
     }
 
-    public ArchiveInfo getArchiveProcessInfo(String id) {
-        return processes.get(id);
+    public JSONObject findProcess(String id) {
+        return processRegistry.find(id);
+    }
+
+    public JSONObject listProcesses(ArchiveInfo.State state, ArchiveInfo.Type type, Long from, Long to,
+                                    int offset, int limit) {
+        return processRegistry.list(state, type, from, to, offset, limit);
+    }
+
+    public ArchivingMetrics getMetrics() {
+        return metrics;
+    }
+
+    private ArchiveInfo startProcess(ArchiveInfo.Type type, String status) {
+        ArchiveInfo info = new ArchiveInfo(UUID.randomUUID().toString(), type, new Date());
+        info.setStatus(status);
+        metrics.track(info);
+        processRegistry.register(info);
+        return info;
     }
 
     public String resolvePath(String storageId) {
-        String path = directories.get(storageId);
-        if (path.contains("/"))
-            return path.substring(path.lastIndexOf('/') + 1);
-        return path;
+        return repositoryRegistry.resolveRepository(storageId);
     }
 
-    private String getSnapshotStatus(String storageId, String archiveName) throws IOException {
-        GetSnapshot status = new GetSnapshot
+    /**
+     * Cached health of all verified repositories by repository name.
+     */
+    public Map<String, RepositoryHealthCache.Health> getRepositoryHealth() {
+        return repositoryHealth.getAll();
+    }
+
+    public RepositoryHealthCache.Health checkRepository(String storageId) {
+        return repositoryHealth.check(resolvePath(storageId));
+    }
+
+    private GetSnapshot getSnapshot(String storageId, Collection<String> snapshots) {
+        return new GetSnapshot
                 .Builder(resolvePath(storageId))
-                .addSnapshot(archiveName)
+                .addSnapshot(snapshots)
                 .build();
+    }
 
-        return jestClient.execute(status).getJsonString();
+    private String getSnapshotStatus(String storageId, Collection<String> snapshots) throws IOException {
+        return controlJestClient.execute(getSnapshot(storageId, snapshots)).getJsonString();
     }
 
-    private CreateSnapshot createSnapshot(String storageId, String archiveName, HashSet<String> indices) {
+    private CreateSnapshot createSnapshot(String storageId, String snapshotName, Set<String> indices) {
         CreateSnapshot.Builder snapshotBuilder = new CreateSnapshot
-                .Builder(resolvePath(storageId), archiveName);
+                .Builder(resolvePath(storageId), snapshotName);
         return snapshotBuilder
                 .settings(ImmutableMap.of("indices", indices))
-                .waitForCompletion(true)
+                .waitForCompletion(false)
                 .build();
     }
 
     public String archive(String storageId, String archiveName, HashSet<String> indices) {
-        if (!directories.containsKey(storageId)) {
+        return archive(storageId, archiveName, indices, ExecutionLane.Priority.INTERACTIVE);
+    }
+
+    private String archive(String storageId, String archiveName, HashSet<String> indices,
+                           ExecutionLane.Priority priority) {
+        if (!repositoryRegistry.contains(storageId)) {
             log.info("Plugin doesn't contain settings for storageId: " + storageId + ". Create it as FS");
             addFSSettings(storageId, null);
         }
-        if (!graylogProcessor.checkExisting(archiveName)) {
-            CreateSnapshot snapshot = createSnapshot(storageId, archiveName, indices);
-            String id = UUID.randomUUID().toString();
-            ArchiveInfo archiveInfo = new ArchiveInfo(id, new Date());
-            archiveInfo.setStatus("Starting archive procedure");
-            processes.put(id, archiveInfo);
-            executorService.submit(() -> {
+        if (!archiveExists(archiveName)) {
+            repositoryHealth.require(resolvePath(storageId));
+            ArchiveInfo archiveInfo = startProcess(ArchiveInfo.Type.ARCHIVE, "Starting archive procedure");
+            archiveLane.submit(archiveInfo, priority, () -> {
                 try {
                     archiveInfo.setStatus("Loading data from Elasticsearch");
-                    JestResult result = jestClient.execute(snapshot);
-                    if (result.getResponseCode() == 200) {
-                        String snapshotStatus = getSnapshotStatus(storageId, archiveName);
-                        String response = getArchiveInfo(storageId, archiveName);
-                        graylogProcessor.createInfoFile(archiveName, response);
-                        archiveInfo.setStatus("Success");
-                        archiveInfo.setResult(snapshotStatus);
-                    } else {
-                        archiveInfo.setStatus("Failed");
-                        archiveInfo.setResult(result.getJsonString());
+                    Map<String, Set<String>> snapshots;
+                    try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.ARCHIVE, "plan")) {
+                        snapshots = snapshotPlanner.plan(archiveName, indices);
                     }
-                } catch (IOException | RuntimeException e) {
-                    log.error(e.getMessage(), e);
-                    archiveInfo.setStatus("Failed");
-                    archiveInfo.setResult(e.getMessage());
+                    Timer.Context snapshotsTimer = metrics.startPhase(ArchiveInfo.Type.ARCHIVE, "snapshots");
+                    runSnapshots(storageId, snapshots)
+                            .whenComplete((v, e) -> snapshotsTimer.stop())
+                            .thenRunAsync(() -> {
+                                // read after the snapshots, so the range of a write index covers every
+                                // message in its snapshot; later messages only widen it
+                                archiveInfo.setStatus("Reading timestamp ranges of indices");
+                                Map<String, TimestampRangeCollector.Range> ranges;
+                                try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.ARCHIVE, "timestamps")) {
+                                    ranges = timestampRangeCollector.collect(indices);
+                                }
+                                completeArchive(storageId, archiveName, snapshots, ranges, archiveInfo);
+                            }, archiveLane.continuations())
+                            .whenComplete((v, e) -> indexMetadataCache.invalidate(indices))
+                            .exceptionally(e -> fail(archiveInfo, e));
+                } catch (RuntimeException e) {
+                    fail(archiveInfo, e);
                 }
             });
-            return id;
+            return archiveInfo.getId();
         } else return "Archive with name " + archiveName + " already exists!";
     }
 
+    /**
+     * Runs the snapshots of one archive with at most archiving_snapshot_concurrency of them in progress.
+     */
+    private CompletableFuture<Void> runSnapshots(String storageId, Map<String, Set<String>> snapshots) {
+        Queue<Map.Entry<String, Set<String>>> queue = new ConcurrentLinkedQueue<>(snapshots.entrySet());
+        int concurrency = Math.min(configuration.getSnapshotConcurrency(), snapshots.size());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            running[i] = runNextSnapshot(storageId, queue);
+        }
+        return CompletableFuture.allOf(running);
+    }
+
+    private CompletableFuture<Void> runNextSnapshot(String storageId, Queue<Map.Entry<String, Set<String>>> queue) {
+        Map.Entry<String, Set<String>> next = queue.poll();
+        if (next == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String repository = resolvePath(storageId);
+        return coordinator.acquire(repository, RepositoryCoordinator.Operation.SNAPSHOT, next.getValue())
+                .thenComposeAsync(permit -> startSnapshot(storageId, next.getKey(), next.getValue())
+                        .thenCompose(v -> snapshotPoller.track(repository, next.getKey()))
+                        .whenComplete((v, e) -> permit.close()), archiveLane.continuations())
+                .thenCompose(v -> runNextSnapshot(storageId, queue));
+    }
+
+    private CompletableFuture<Void> startSnapshot(String storageId, String snapshotName, Set<String> indices) {
+        log.info("Create snapshot " + snapshotName + " for indices " + indices);
+        return executePinned(selectServer(), "snapshot " + snapshotName, createSnapshot(storageId, snapshotName, indices),
+                archiveLane)
+                .thenAccept(result -> {
+                    if (result.getResponseCode() != 200) {
+                        throw new RuntimeException("Can't create snapshot " + snapshotName + ": " + result.getJsonString());
+                    }
+                });
+    }
+
+    private void completeArchive(String storageId, String archiveName, Map<String, Set<String>> snapshots,
+                                 Map<String, TimestampRangeCollector.Range> ranges, ArchiveInfo archiveInfo) {
+        try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.ARCHIVE, "complete")) {
+            String snapshotStatus = getSnapshotStatus(storageId, snapshots.keySet());
+            String response = getArchiveInfo(storageId, snapshots.keySet());
+            graylogProcessor.createInfoFile(archiveName, response);
+            Set<String> indices = new HashSet<>();
+            snapshots.values().forEach(indices::addAll);
+            Map<String, Long> sizes = indexMetadataCache.getStoreSizes(indices);
+            Map<String, ArchiveRecord.ArchivedIndex> indexMetadata = new HashMap<>();
+            for (String index : indices) {
+                TimestampRangeCollector.Range range = ranges.get(index);
+                indexMetadata.put(index, new ArchiveRecord.ArchivedIndex(sizes.getOrDefault(index, 0L),
+                        range == null ? null : range.getMin(), range == null ? null : range.getMax()));
+            }
+            Collection<SnapshotSummary> summaries = streamReader.read(response, SnapshotSummary::readAll).values();
+            for (SnapshotSummary summary : summaries) {
+                metrics.snapshotCompleted(summary.getIncrementalSizeBytes(), summary.getTimeMillis());
+            }
+            archiveCatalog.put(ArchiveRecord.create(archiveName, storageId, resolvePath(storageId),
+                    summaries, indexMetadata, archiveInfo.getStartTime().getTime()));
+            archiveInfo.complete(snapshotStatus);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Void fail(ArchiveInfo info, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        log.error(cause.getMessage(), cause);
+        info.fail(cause.getMessage());
+        return null;
+    }
+
     public String readInfoFile(String archiveName) {
         return graylogProcessor.getArchiveInfo(archiveName);
     }
 
-    private String getArchiveInfo(String storageId, String archiveName) throws IOException {
+    private String getArchiveInfo(String storageId, Collection<String> snapshots) throws IOException {
         SnapshotStatus status = new SnapshotStatus
                 .Builder(resolvePath(storageId))
-                .addSnapshot(archiveName)
+                .addSnapshot(snapshots)
                 .build();
-        return jestClient.execute(status).getJsonString();
+        return controlJestClient.execute(status).getJsonString();
     }
 
     public String restore(String storageId, String archiveName) {
-        String uuid = UUID.randomUUID().toString();
-        ArchiveInfo restoreInfo = new ArchiveInfo(uuid, new Date());
-        restoreInfo.setStatus("Starting restore procedure");
+        return restore(storageId, archiveName, null, null);
+    }
+
+    /**
+     * @param from restore only indices with messages at or after this time in millis, no bound if null
+     * @param to   restore only indices with messages at or before this time in millis, no bound if null
+     */
+    public String restore(String storageId, String archiveName, Long from, Long to) {
+        repositoryHealth.require(resolvePath(storageId));
+        ArchiveInfo restoreInfo = startProcess(ArchiveInfo.Type.RESTORE, "Starting restore procedure");
         log.info("Starting restore procedure");
-        processes.put(uuid, restoreInfo);
-        executorService.submit(() -> {
+        restoreLane.submit(restoreInfo, ExecutionLane.Priority.INTERACTIVE, () -> {
             try {
-                graylogProcessor.prepareEnvironment();
-                List<String> indices = graylogProcessor.getIndices(getSnapshotStatus(storageId, archiveName));
-                int id = graylogProcessor.getActiveWriteIndexNumber();
-                JSONObject result = new JSONObject();
-                for (String index : indices) {
-                    restoreInfo.setStatus("Restoring: " + index);
-                    Map<String, Object> settings = ImmutableMap.<String, Object>builder()
-                            .put("indices", index)
-                            .put("rename_pattern", "(.+)")
-                            .put("rename_replacement", "restored_".concat(String.valueOf(++id)))
-                            .build();
-                    RestoreSnapshot snapshot = new RestoreSnapshot
-                            .Builder(resolvePath(storageId), archiveName)
-                            .settings(settings)
-                            .build();
-                    JestResult execute = jestClient.execute(snapshot);
-                    result.put(index, execute.getJsonString());
+                Map<String, List<String>> indices;
+                try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.RESTORE, "prepare")) {
+                    graylogProcessor.prepareEnvironment();
+                    List<String> snapshots = graylogProcessor.getArchiveSnapshots(archiveName);
+                    indices = filterByTime(archiveName, graylogProcessor.getIndices(
+                            streamReader.read(getSnapshot(storageId, snapshots), SnapshotSummary::readAll)), from, to);
                 }
-                graylogProcessor.waitForCompletion("restored_" + id);
-                restoreInfo.setStatus("Success");
-                restoreInfo.setResult(result.toString());
-            } catch (IOException | RuntimeException | InterruptedException e) {
-                log.error(e.getMessage(), e);
-                restoreInfo.setStatus("Failed");
-                restoreInfo.setResult(e.getMessage());
+                String repository = resolvePath(storageId);
+                CompletableFuture<RepositoryCoordinator.Permit> permit = coordinator.acquire(repository,
+                        RepositoryCoordinator.Operation.RESTORE, Collections.emptySet());
+                if (!permit.isDone()) {
+                    restoreInfo.setStatus("Waiting for other operations on repository " + repository);
+                }
+                // a snapshot can't be deleted while it's restored, so the permit is kept until recovery is done
+                permit.thenCompose(restorePermit -> graylogProcessor.getActiveWriteIndexNumber()
+                        .thenComposeAsync(id -> {
+                            Timer.Context indicesTimer = metrics.startPhase(ArchiveInfo.Type.RESTORE, "indices");
+                            return restoreIndices(storageId, indices, id, restoreInfo)
+                                    .whenComplete((restored, e) -> indicesTimer.stop());
+                        }, restoreLane.continuations())
+                        .whenComplete((restored, e) -> {
+                            if (restored != null) {
+                                indexMetadataCache.invalidate(restored.values());
+                            }
+                        })
+                        .thenCompose(restored -> {
+                            restoreInfo.setStatus("Waiting for recovery");
+                            Timer.Context recoveryTimer = metrics.startPhase(ArchiveInfo.Type.RESTORE, "recovery");
+                            return restoreTracker.awaitCompletion(restored, restoreInfo::setProgress)
+                                    .thenApply(progress -> {
+                                        long millis = TimeUnit.NANOSECONDS.toMillis(recoveryTimer.stop());
+                                        metrics.recoveryCompleted(progress.getTotalBytes(), millis);
+                                        return restored;
+                                    });
+                        })
+                        .whenComplete((restored, e) -> restorePermit.close()))
+                        .thenAccept(restored -> {
+                            restoreInfo.complete(new JSONObject(restored).toString());
+                        })
+                        .exceptionally(e -> fail(restoreInfo, e));
+            } catch (IOException | RuntimeException e) {
+                fail(restoreInfo, e);
             }
         });
-        return uuid;
+        return restoreInfo.getId();
+    }
+
+    /**
+     * Leaves the indices which overlap the time window according to the catalog. Indices without a known
+     * timestamp range are kept.
+     */
+    private Map<String, List<String>> filterByTime(String archiveName, Map<String, List<String>> indices, Long from, Long to) {
+        if (from == null && to == null) {
+            return indices;
+        }
+        Optional<ArchiveRecord> record = archiveCatalog.get(archiveName);
+        if (!record.isPresent()) {
+            log.warn("Archive " + archiveName + " is not in the catalog, all indices are restored");
+            return indices;
+        }
+        long lower = from == null ? Long.MIN_VALUE : from;
+        long upper = to == null ? Long.MAX_VALUE : to;
+        Map<String, List<String>> filtered = new LinkedHashMap<>();
+        int total = 0;
+        int kept = 0;
+        for (Map.Entry<String, List<String>> snapshot : indices.entrySet()) {
+            List<String> overlapping = new ArrayList<>();
+            for (String index : snapshot.getValue()) {
+                ArchiveRecord.ArchivedIndex archived = record.get().getIndices().get(index);
+                if (archived == null || archived.overlaps(lower, upper)) {
+                    overlapping.add(index);
+                }
+            }
+            total += snapshot.getValue().size();
+            kept += overlapping.size();
+            if (!overlapping.isEmpty()) {
+                filtered.put(snapshot.getKey(), overlapping);
+            }
+        }
+        if (filtered.isEmpty()) {
+            throw new RuntimeException("No indices of archive " + archiveName + " overlap the time window");
+        }
+        log.info("Restore " + kept + " of " + total + " indices of archive " + archiveName + " for the time window");
+        return filtered;
+    }
+
+    /**
+     * Sends the restore requests one after another and completes with original index name to restored index
+     * name. A request rejected by a running snapshot waits without holding a lane worker.
+     */
+    private CompletableFuture<Map<String, String>> restoreIndices(String storageId, Map<String, List<String>> indices,
+                                                                  int firstId, ArchiveInfo restoreInfo) {
+        String server = selectServer();
+        int id = firstId;
+        Map<String, String> restored = new LinkedHashMap<>();
+        CompletableFuture<Void> requests = CompletableFuture.completedFuture(null);
+        for (Map.Entry<String, List<String>> snapshotIndices : indices.entrySet()) {
+            RestorePlan plan = RestorePlan.create(snapshotIndices.getValue(), id);
+            id = plan.getLastNumber();
+            restored.putAll(plan.getRenamed());
+            for (RestorePlan.Request request : plan.getRequests()) {
+                Map<String, Object> settings = ImmutableMap.<String, Object>builder()
+                        .put("indices", String.join(",", request.getIndices()))
+                        .put("rename_pattern", request.getRenamePattern())
+                        .put("rename_replacement", request.getRenameReplacement())
+                        .build();
+                RestoreSnapshot snapshot = new RestoreSnapshot
+                        .Builder(resolvePath(storageId), snapshotIndices.getKey())
+                        .settings(settings)
+                        .build();
+                requests = requests.thenComposeAsync(v -> {
+                    restoreInfo.setStatus("Restoring: " + snapshotIndices.getKey());
+                    return executePinned(server, "restore of " + request.getIndices(), snapshot, restoreLane);
+                }, restoreLane.continuations()).thenAccept(execute -> {
+                    if (!execute.isSucceeded()) {
+                        throw new RuntimeException("Can't restore " + request.getIndices() + ": " + execute.getJsonString());
+                    }
+                });
+            }
+        }
+        return requests.thenApply(v -> restored);
     }
 
     public String delete(String storageId, String archiveName) {
-        String uuid = UUID.randomUUID().toString();
-        ArchiveInfo deleteInfo = new ArchiveInfo(uuid, new Date());
-        deleteInfo.setStatus("Starting delete procedure");
+        repositoryHealth.require(resolvePath(storageId));
+        ArchiveInfo deleteInfo = startProcess(ArchiveInfo.Type.DELETE, "Starting delete procedure");
         log.info("Starting delete procedure");
-        processes.put(uuid, deleteInfo);
-        executorService.submit(() -> {
+        deleteLane.submit(deleteInfo, ExecutionLane.Priority.INTERACTIVE, () -> {
             try {
-                deleteInfo.setStatus("Waiting for deletion data from elasticsearch");
-                DeleteSnapshot snapshot = new DeleteSnapshot.Builder(resolvePath(storageId), archiveName).build();
-                jestClient.execute(snapshot).getJsonString();
-                deleteInfo.setStatus("Waiting for deletion data from volume");
-                String result = graylogProcessor.deleteArchive(archiveName);
-                deleteInfo.setStatus("Success");
-                deleteInfo.setResult(result);
-            } catch (IOException | RuntimeException e) {
+                String repository = resolvePath(storageId);
+                List<String> snapshots = graylogProcessor.getArchiveSnapshots(archiveName);
+                CompletableFuture<RepositoryCoordinator.Permit> permit = coordinator.acquire(repository,
+                        RepositoryCoordinator.Operation.DELETE, Collections.emptySet());
+                if (!permit.isDone()) {
+                    deleteInfo.setStatus("Waiting for other operations on repository " + repository);
+                }
+                // the lane worker is released while the permit is awaited, a long restore can hold it for hours
+                permit.thenComposeAsync(deletePermit -> underPermit(deletePermit, () -> {
+                            deleteInfo.setStatus("Waiting for deletion data from elasticsearch");
+                            Timer.Context snapshotsTimer = metrics.startPhase(ArchiveInfo.Type.DELETE, "snapshots");
+                            return deleteEachSnapshot(selectServer(), repository, snapshots)
+                                    .whenComplete((v, e) -> snapshotsTimer.stop());
+                        }), deleteLane.continuations())
+                        .thenRunAsync(() -> {
+                            deleteInfo.setStatus("Waiting for deletion data from volume");
+                            String result;
+                            try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.DELETE, "files")) {
+                                result = graylogProcessor.deleteArchive(archiveName);
+                            }
+                            archiveCatalog.remove(archiveName);
+                            deleteInfo.complete(result);
+                        }, deleteLane.continuations())
+                        .exceptionally(e -> fail(deleteInfo, e));
+            } catch (RuntimeException e) {
                 log.error(e.getMessage(), e);
-                deleteInfo.setStatus("Failed");
-                deleteInfo.setResult(e.getMessage());
+                deleteInfo.fail(e.getMessage());
             }
         });
-        return uuid;
+        return deleteInfo.getId();
+    }
+
+    /**
+     * Runs the operations as one batch process. Operations of one repository run one after another in the given
+     * order and repositories run in parallel. Consecutive deletes of a repository hold one permit and their
+     * snapshots are deleted with combined requests where Elasticsearch supports it.
+     *
+     * @return id of the batch process, its items show the progress of every operation
+     */
+    public String batch(List<BatchOperation> operations) {
+        ArchiveInfo batchInfo = startProcess(ArchiveInfo.Type.BATCH, "Starting batch");
+        BatchProgress progress = new BatchProgress(batchInfo, operations);
+        log.info("Starting batch of " + operations.size() + " operations");
+        Map<String, List<BatchProgress.Item>> byRepository = new LinkedHashMap<>();
+        for (BatchProgress.Item item : progress.getItems()) {
+            String storageId = item.getOperation().getStorageId();
+            if (!repositoryRegistry.contains(storageId)) {
+                progress.finished(item, false, "Storage " + storageId + " is not registered");
+                continue;
+            }
+            byRepository.computeIfAbsent(resolvePath(storageId), repository -> new ArrayList<>()).add(item);
+        }
+        List<CompletableFuture<Void>> pipelines = new ArrayList<>();
+        for (List<BatchProgress.Item> items : byRepository.values()) {
+            pipelines.add(runPipeline(progress, items));
+        }
+        CompletableFuture.allOf(pipelines.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, e) -> {
+                    if (progress.count(BatchProgress.ItemState.FAILED) == 0) {
+                        batchInfo.complete(progress.summary());
+                    } else {
+                        batchInfo.fail(progress.summary());
+                    }
+                });
+        return batchInfo.getId();
+    }
+
+    private CompletableFuture<Void> runPipeline(BatchProgress progress, List<BatchProgress.Item> items) {
+        CompletableFuture<Void> pipeline = CompletableFuture.completedFuture(null);
+        int i = 0;
+        while (i < items.size()) {
+            List<BatchProgress.Item> step = new ArrayList<>();
+            step.add(items.get(i++));
+            if (step.get(0).getOperation().getType() == ArchiveInfo.Type.DELETE) {
+                while (i < items.size() && items.get(i).getOperation().getType() == ArchiveInfo.Type.DELETE) {
+                    step.add(items.get(i++));
+                }
+            }
+            // a step is started on a worker of its lane, not on the thread which finished the previous process
+            pipeline = pipeline.thenComposeAsync(v -> runBatchStep(progress, step), laneOf(step.get(0)).continuations());
+        }
+        return pipeline;
+    }
+
+    private ExecutionLane laneOf(BatchProgress.Item item) {
+        switch (item.getOperation().getType()) {
+            case ARCHIVE:
+                return archiveLane;
+            case RESTORE:
+                return restoreLane;
+            default:
+                return deleteLane;
+        }
+    }
+
+    private CompletableFuture<Void> runBatchStep(BatchProgress progress, List<BatchProgress.Item> step) {
+        BatchProgress.Item item = step.get(0);
+        BatchOperation operation = item.getOperation();
+        try {
+            if (operation.getType() == ArchiveInfo.Type.DELETE) {
+                return deleteBatch(progress, step);
+            }
+            String id = operation.getType() == ArchiveInfo.Type.ARCHIVE
+                    ? archive(operation.getStorageId(), operation.getArchiveName(),
+                    new HashSet<>(operation.getIndices()), ExecutionLane.Priority.INTERACTIVE)
+                    : restore(operation.getStorageId(), operation.getArchiveName(), operation.getFrom(), operation.getTo());
+            ArchiveInfo info = processRegistry.get(id);
+            if (info == null) {
+                progress.finished(item, false, id);
+                return CompletableFuture.completedFuture(null);
+            }
+            progress.started(item, id);
+            CompletableFuture<Void> finished = new CompletableFuture<>();
+            onFinished(info, process -> {
+                progress.finished(item, process.getState() == ArchiveInfo.State.SUCCESS, process.getResult());
+                finished.complete(null);
+            });
+            return finished;
+        } catch (RuntimeException e) {
+            log.error("Error during batch " + operation.getType() + " of " + operation.getArchiveName() + ": " + e.getMessage(), e);
+            for (BatchProgress.Item failed : step) {
+                progress.finished(failed, false, e.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Deletes the archives of one repository under one permit. An archive whose snapshots can't be read is
+     * failed alone, the others are deleted. No lane worker is held while the permit is awaited.
+     */
+    private CompletableFuture<Void> deleteBatch(BatchProgress progress, List<BatchProgress.Item> items) {
+        String repository = resolvePath(items.get(0).getOperation().getStorageId());
+        repositoryHealth.require(repository);
+        Map<BatchProgress.Item, List<String>> snapshots = new LinkedHashMap<>();
+        for (BatchProgress.Item item : items) {
+            progress.started(item, null);
+            try {
+                snapshots.put(item, graylogProcessor.getArchiveSnapshots(item.getOperation().getArchiveName()));
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+                progress.finished(item, false, e.getMessage());
+            }
+        }
+        List<String> names = new ArrayList<>();
+        snapshots.values().forEach(names::addAll);
+        return coordinator.acquire(repository, RepositoryCoordinator.Operation.DELETE, Collections.emptySet())
+                .thenComposeAsync(permit -> underPermit(permit, () -> {
+                    Timer.Context snapshotsTimer = metrics.startPhase(ArchiveInfo.Type.DELETE, "snapshots");
+                    return deleteSnapshots(selectServer(), repository, names)
+                            .whenComplete((v, e) -> snapshotsTimer.stop());
+                }), deleteLane.continuations())
+                .thenRunAsync(() -> {
+                    try (Timer.Context ignored = metrics.startPhase(ArchiveInfo.Type.DELETE, "files")) {
+                        for (BatchProgress.Item item : snapshots.keySet()) {
+                            String archiveName = item.getOperation().getArchiveName();
+                            try {
+                                String result = graylogProcessor.deleteArchive(archiveName);
+                                archiveCatalog.remove(archiveName);
+                                progress.finished(item, true, result);
+                            } catch (RuntimeException e) {
+                                log.error(e.getMessage(), e);
+                                progress.finished(item, false, e.getMessage());
+                            }
+                        }
+                    }
+                }, deleteLane.continuations())
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.error(cause.getMessage(), cause);
+                    for (BatchProgress.Item item : snapshots.keySet()) {
+                        progress.finished(item, false, cause.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> deleteSnapshots(String server, String repository, List<String> snapshots) {
+        if (snapshots.size() < 2 || !supportsMultiSnapshotDelete()) {
+            return deleteEachSnapshot(server, repository, snapshots);
+        }
+        CompletableFuture<Void> deleted = CompletableFuture.completedFuture(null);
+        for (List<String> chunk : Lists.partition(snapshots, MAX_SNAPSHOTS_PER_DELETE)) {
+            String names = String.join(",", chunk);
+            DeleteSnapshot snapshot = new DeleteSnapshot.Builder(repository, names).build();
+            deleted = deleted.thenComposeAsync(v -> executePinned(server, "deletion of snapshots " + names, snapshot,
+                    deleteLane), deleteLane.continuations())
+                    .thenCompose(result -> {
+                        if (result.isSucceeded()) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        // the combined request deletes nothing if one of the snapshots is missing
+                        log.warn("Can't delete snapshots " + names + " together, delete them one by one: " + result.getErrorMessage());
+                        return deleteEachSnapshot(server, repository, chunk);
+                    });
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the snapshots one after another, the results are not checked as a missing snapshot is already
+     * deleted.
+     */
+    private CompletableFuture<Void> deleteEachSnapshot(String server, String repository, List<String> snapshots) {
+        CompletableFuture<Void> deleted = CompletableFuture.completedFuture(null);
+        for (String snapshotName : snapshots) {
+            DeleteSnapshot snapshot = new DeleteSnapshot.Builder(repository, snapshotName).build();
+            deleted = deleted.thenComposeAsync(v -> executePinned(server, "deletion of snapshot " + snapshotName,
+                    snapshot, deleteLane), deleteLane.continuations()).thenAccept(result -> {
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Elasticsearch deletes several snapshots in one request since 7.8, OpenSearch always does. The answer is
+     * cached once the cluster is reached.
+     */
+    private boolean supportsMultiSnapshotDelete() {
+        Boolean supported = multiSnapshotDelete;
+        if (supported != null) {
+            return supported;
+        }
+        try {
+            JestResult result = controlJestClient.execute(new Ping.Builder().build());
+            if (!result.isSucceeded()) {
+                log.warn("Can't read the Elasticsearch version: " + result.getErrorMessage());
+                return false;
+            }
+            JSONObject version = new JSONObject(result.getJsonString()).getJSONObject("version");
+            String[] number = version.getString("number").split("\\.");
+            int major = Integer.parseInt(number[0]);
+            int minor = number.length > 1 ? Integer.parseInt(number[1]) : 0;
+            supported = "opensearch".equals(version.optString("distribution"))
+                    || major > 7 || major == 7 && minor >= 8;
+            multiSnapshotDelete = supported;
+            log.info("Elasticsearch " + version.getString("number") + (supported ? " deletes" : " doesn't delete")
+                    + " several snapshots in one request");
+            return supported;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't read the Elasticsearch version: " + e.getMessage());
+            return false;
+        }
     }
 
-    public List<String> getIndicesByMasks(ShortIndex[] lst, List<String> masks) {
+    /**
+     * Runs the step and closes the permit once the step is finished, also if the step fails to start.
+     */
+    private static <T> CompletableFuture<T> underPermit(RepositoryCoordinator.Permit permit,
+                                                        Supplier<CompletableFuture<T>> step) {
+        CompletableFuture<T> future;
+        try {
+            future = step.get();
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        return future.whenComplete((v, e) -> permit.close());
+    }
+
+    /**
+     * Node for a sequence of requests whose steps run on different threads, null without routing.
+     */
+    private String selectServer() {
+        return jestClient instanceof RoutingJestClient ? ((RoutingJestClient) jestClient).selectServer() : null;
+    }
+
+    /**
+     * Sends the request to the selected node through the coordinator. A rejected request is retried later on
+     * the continuations of the lane and still goes to the selected node.
+     */
+    private <T extends JestResult> CompletableFuture<T> executePinned(String server, String name, Action<T> action,
+                                                                      ExecutionLane lane) {
+        return coordinator.execute(name, lane.continuations(), () -> {
+            if (server == null || !(jestClient instanceof RoutingJestClient)) {
+                return jestClient.execute(action);
+            }
+            return ((RoutingJestClient) jestClient).pinned(server, node -> jestClient.execute(action));
+        });
+    }
+
+    private boolean archiveExists(String archiveName) {
+        return archiveCatalog.contains(archiveName) || graylogProcessor.checkExisting(archiveName);
+    }
+
+    public ArchiveCatalog.Page findArchives(String index, Long from, Long to, int offset, int limit) {
+        return archiveCatalog.find(index, from, to, offset, limit);
+    }
+
+    public Map<String, ArchiveStatistics.Summary> getStatistics(String repository, Long from, Long to) {
+        return archiveCatalog.statistics(repository, from, to);
+    }
+
+    /**
+     * Rebuilds the catalog from the snapshots of every registered repository. Repositories are read in
+     * parallel, the result is the number of archives found per repository.
+     */
+    public String reconcileCatalog() {
+        ArchiveInfo reconcileInfo = startProcess(ArchiveInfo.Type.RECONCILE, "Reading snapshots of repositories");
+        Map<String, String> repositories = new LinkedHashMap<>();
+        for (String storageId : repositoryRegistry.getDirectories().keySet()) {
+            repositories.putIfAbsent(resolvePath(storageId), storageId);
+        }
+        Map<String, CompletableFuture<Integer>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, String> repository : repositories.entrySet()) {
+            results.put(repository.getKey(), CompletableFuture.supplyAsync(
+                    () -> reconcileRepository(repository.getValue(), repository.getKey()), deleteLane.continuations()));
+        }
+        CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> {
+                    JSONObject result = new JSONObject();
+                    results.forEach((repository, count) -> result.put(repository, count.join()));
+                    reconcileInfo.complete(result.toString());
+                })
+                .exceptionally(e -> fail(reconcileInfo, e));
+        return reconcileInfo.getId();
+    }
+
+    private int reconcileRepository(String storageId, String repository) {
+        long since = archiveCatalog.startReconcile();
+        try {
+            GetSnapshot all = new GetSnapshot.Builder(repository).addSnapshot("_all").build();
+            Map<String, String> owners = getSnapshotOwners();
+            Map<String, List<SnapshotSummary>> archives = new LinkedHashMap<>();
+            for (SnapshotSummary snapshot : streamReader.read(all, SnapshotSummary::readAll).values()) {
+                if (STATE_SUCCESS.equals(snapshot.getState())) {
+                    archives.computeIfAbsent(owners.getOrDefault(snapshot.getName(), snapshot.getName()), k -> new ArrayList<>())
+                            .add(snapshot);
+                }
+            }
+            List<ArchiveRecord> records = new ArrayList<>();
+            for (Map.Entry<String, List<SnapshotSummary>> archive : archives.entrySet()) {
+                records.add(reconcileRecord(archive.getKey(), storageId, repository, archive.getValue()));
+            }
+            archiveCatalog.replaceRepository(repository, records, since);
+            log.info("Archive catalog is reconciled with repository " + repository + ": " + records.size() + " archives");
+            return records.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            archiveCatalog.finishReconcile();
+        }
+    }
+
+    /**
+     * Archive names of the snapshots listed in the info-files. A snapshot name alone can't tell a part of a split
+     * archive from an archive of its own, so snapshots missing from the info-files are archives of their own.
+     */
+    private Map<String, String> getSnapshotOwners() {
+        Map<String, String> owners = new HashMap<>();
+        for (String archiveName : graylogProcessor.listArchives()) {
+            try {
+                for (String snapshot : graylogProcessor.readInfoFileSnapshots(archiveName).keySet()) {
+                    owners.put(snapshot, archiveName);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Can't read snapshots of archive " + archiveName + ": " + e.getMessage());
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Snapshot listings have no sizes, time ranges and stats, so they are kept from the known archive as well
+     * as its creation time.
+     */
+    private ArchiveRecord reconcileRecord(String name, String storageId, String repository, List<SnapshotSummary> snapshots) {
+        Optional<ArchiveRecord> existing = archiveCatalog.get(name);
+        Map<String, ArchiveRecord.ArchivedIndex> indexMetadata = new HashMap<>();
+        long creationTime = Long.MAX_VALUE;
+        for (SnapshotSummary snapshot : snapshots) {
+            creationTime = Math.min(creationTime, snapshot.getStartTimeMillis());
+        }
+        if (existing.isPresent()) {
+            indexMetadata.putAll(existing.get().getIndices());
+            creationTime = existing.get().getCreationTime();
+        } else if (creationTime == Long.MAX_VALUE) {
+            creationTime = 0;
+        }
+        ArchiveRecord record = ArchiveRecord.create(name, storageId, repository, snapshots, indexMetadata, creationTime);
+        if (existing.isPresent() && (record.getSizeBytes() == 0 || record.getStatistics() == null)) {
+            record = new ArchiveRecord(name, storageId, repository, record.getSnapshots(), record.getIndices(),
+                    record.getSizeBytes() == 0 ? existing.get().getSizeBytes() : record.getSizeBytes(), creationTime,
+                    record.getStatistics() == null ? existing.get().getStatistics() : record.getStatistics());
+        }
+        return record;
+    }
+
+    /**
+     * Fills a new catalog with the archives which have only an info-file.
+     */
+    private void importInfoFiles() {
+        List<String> archiveNames;
+        try {
+            archiveNames = graylogProcessor.listArchives();
+        } catch (RuntimeException e) {
+            log.error("Can't import info-files into the archive catalog: " + e.getMessage(), e);
+            return;
+        }
+        int imported = 0;
+        for (String archiveName : archiveNames) {
+            if (archiveCatalog.contains(archiveName)) {
+                continue;
+            }
+            try {
+                Collection<SnapshotSummary> snapshots = graylogProcessor.readInfoFileSnapshots(archiveName).values();
+                long creationTime = Long.MAX_VALUE;
+                for (SnapshotSummary snapshot : snapshots) {
+                    creationTime = Math.min(creationTime, snapshot.getStartTimeMillis());
+                }
+                archiveCatalog.put(ArchiveRecord.create(archiveName, null, null, snapshots, Collections.emptyMap(),
+                        creationTime == Long.MAX_VALUE ? 0 : creationTime));
+                imported++;
+            } catch (RuntimeException e) {
+                log.warn("Can't import archive " + archiveName + " into the archive catalog: " + e.getMessage());
+            }
+        }
+        log.info("Imported " + imported + " archives into the archive catalog");
+    }
+
+    public List<String> getIndicesByMasks(Collection<ShortIndex> lst, List<String> masks) {
         List<String> toArchive = new ArrayList<>();
+        PrefixMatcher matcher = getMatcher(masks);
         for (ShortIndex i : lst) {
-            for (String m : masks) {
-                if (i.getName().startsWith(m)) {
-                    toArchive.add(i.getName());
-                    break;
-                }
+            if (matcher.matches(i.getName())) {
+                toArchive.add(i.getName());
             }
         }
         return toArchive;
     }
 
-    public List<String> getIndicesByPeriod(ShortIndex[] lst, String period) {
+    public List<String> getIndicesByPeriod(Collection<ShortIndex> lst, String period) {
         List<String> toArchive = new ArrayList<>();
         long currentTime = new Date().getTime();
         long searchedTime = currentTime - timeUnitProcessor.toLong(period);
@@ -256,9 +950,7 @@ public class ArchivingService {
             return Collections.emptyList();
         List<String> toArchive = new ArrayList<>();
         try {
-            JestResult execute = jestClient.execute(new Cat.IndicesBuilder().setParameter("h", "index,creation.date").build());
-            ObjectMapper mapper = new ObjectMapper();
-            ShortIndex[] lst = mapper.readValue(execute.getJsonString(), ShortIndex[].class);
+            Collection<ShortIndex> lst = indexMetadataCache.getIndices();
 
             if ((period == null) && (!masks.isEmpty()))
                 return getIndicesByMasks(lst, masks);
@@ -267,14 +959,10 @@ public class ArchivingService {
 
             long currentTime = new Date().getTime();
             long searchedTime = currentTime - timeUnitProcessor.toLong(period);
+            PrefixMatcher matcher = getMatcher(masks);
             for (ShortIndex i : lst) {
-                if (i.getCreationDate() > searchedTime) {
-                    for (String m : masks) {
-                        if (i.getName().startsWith(m)) {
-                            toArchive.add(i.getName());
-                            break;
-                        }
-                    }
+                if (i.getCreationDate() > searchedTime && matcher.matches(i.getName())) {
+                    toArchive.add(i.getName());
                 }
             }
         } catch (IOException e) {
@@ -283,31 +971,254 @@ public class ArchivingService {
         return toArchive;
     }
 
-    public boolean schedule(String time, String storageId, String name, List<String> indices, String period, List<String> masks) throws SchedulerException {
-        JobDetail job = JobBuilder.newJob(ArchivingJob.class)
-                .withIdentity(name)
-                .build();
-        job.getJobDataMap().put("time", time);
-        job.getJobDataMap().put("storageId", storageId);
-        job.getJobDataMap().put("name", name);
-        job.getJobDataMap().put("masks", masks);
-        job.getJobDataMap().put("indices", indices);
-        job.getJobDataMap().put("service", this);
-        Trigger trigger = TriggerBuilder.newTrigger()
-                .withIdentity(name)
-                .withSchedule(CronScheduleBuilder.cronSchedule(period))
-                .build();
+    /**
+     * Masks of a schedule are the same on every run, so the compiled trie is reused between runs.
+     */
+    private PrefixMatcher getMatcher(List<String> masks) {
+        return matchers.getUnchecked(ImmutableList.copyOf(masks));
+    }
+
+    public boolean schedule(String time, String storageId, String name, List<String> indices, String period, List<String> masks,
+                            ScheduleRuns.OverlapPolicy overlap) throws SchedulerException {
+        Schedule schedule = new Schedule(name, storageId, period, time, indices, masks, overlap,
+                System.currentTimeMillis(), null, null);
         log.info("Schedule job: " + name);
-        scheduler.scheduleJob(job, trigger);
+        scheduleJob(schedule);
+        try {
+            scheduleStore.put(schedule);
+        } catch (RuntimeException e) {
+            scheduler.deleteJob(JobKey.jobKey(name));
+            throw e;
+        }
         return true;
     }
 
     public boolean unschedule(String name) throws SchedulerException {
         log.info("Unscedule job: " + name);
-        scheduler.unscheduleJob(TriggerKey.triggerKey(name));
+        // deletes the pending run of a missed window as well
+        scheduler.deleteJob(JobKey.jobKey(name));
+        scheduleStore.remove(name);
+        scheduleRuns.remove(name);
         return true;
     }
 
+    /**
+     * Starts the archive of a fire unless the archive of an earlier fire is still in progress, in which case
+     * the overlap policy of the schedule decides what happens to the fire. The claim of the window is held
+     * until its run is finished, a fire covered by another run is released right away.
+     */
+    void runSchedule(Schedule schedule, long fireTime) {
+        ScheduleRuns.Outcome outcome = scheduleRuns.fire(schedule.getName(), schedule.getOverlap(), fireTime);
+        if (outcome != ScheduleRuns.Outcome.STARTED) {
+            log.info("Schedule " + schedule.getName() + " is still running, the fire is handled by overlap policy "
+                    + schedule.getOverlap());
+            if (outcome != ScheduleRuns.Outcome.QUEUED) {
+                jobLock.release(schedule.getName(), fireTime);
+            }
+            return;
+        }
+        startScheduledRun(schedule.getName(), fireTime);
+    }
+
+    private void startScheduledRun(String scheduleName, long fireTime) {
+        Long queued;
+        try {
+            Schedule schedule = scheduleStore.get(scheduleName).orElse(null);
+            if (schedule == null) {
+                queued = scheduleRuns.notStarted(scheduleName, fireTime, ScheduleRuns.Outcome.NOT_STARTED,
+                        "Schedule doesn't exist anymore");
+            } else {
+                String name = schedule.getName() + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+                HashSet<String> mergedIndices = new HashSet<>(schedule.getIndices());
+                mergedIndices.addAll(getIndices(schedule.getTime(), schedule.getMasks()));
+                log.info("Try to create archive with name: " + name + " for indices " + mergedIndices);
+                String id = archiveScheduled(schedule, name, mergedIndices);
+                log.info("Process id for created archive: " + id);
+                ArchiveInfo info = processRegistry.get(id);
+                if (info != null) {
+                    scheduleRuns.started(scheduleName, fireTime, id);
+                    onFinished(info, finished -> {
+                        jobLock.release(scheduleName, fireTime);
+                        runQueued(scheduleName, scheduleRuns.finished(scheduleName));
+                    });
+                    return;
+                }
+                queued = scheduleRuns.notStarted(scheduleName, fireTime, ScheduleRuns.Outcome.NOT_STARTED, id);
+            }
+        } catch (RuntimeException e) {
+            log.error("Error during run of schedule " + scheduleName + ": " + e.getMessage(), e);
+            queued = scheduleRuns.notStarted(scheduleName, fireTime, ScheduleRuns.Outcome.FAILED, e.getMessage());
+        }
+        jobLock.release(scheduleName, fireTime);
+        runQueued(scheduleName, queued);
+    }
+
+    private void runQueued(String scheduleName, Long fireTime) {
+        if (fireTime != null) {
+            log.info("Start the queued run of schedule " + scheduleName);
+            archiveLane.continuations().execute(() -> startScheduledRun(scheduleName, fireTime));
+        }
+    }
+
+    /**
+     * Runs of the schedule on this node from the newest to the oldest.
+     */
+    public List<ScheduleRuns.Run> getScheduleRuns(String name) {
+        return scheduleRuns.getRuns(name);
+    }
+
+    /**
+     * Archives only the indices which the schedule has not archived yet or whose document count changed since
+     * then. The store size is not used, merges and replica moves change it without new messages. The counts of the
+     * indices are read fresh, a cached count can miss messages written within the cache TTL. Indices which don't
+     * exist anymore are skipped. The schedule records the indices once the archive is created successfully.
+     *
+     * @return id of the archive process, or a message if there is nothing to archive
+     */
+    String archiveScheduled(Schedule schedule, String archiveName, HashSet<String> indices) {
+        Set<String> existing = new HashSet<>();
+        Map<String, Long> counts;
+        try {
+            indexMetadataCache.invalidate(indices);
+            indexMetadataCache.getIndices().forEach(index -> existing.add(index.getName()));
+            counts = indexMetadataCache.getDocsCounts(indices);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HashSet<String> changed = new HashSet<>();
+        Map<String, Long> changedCounts = new HashMap<>();
+        for (String index : indices) {
+            Long count = counts.get(index);
+            if (count == null) {
+                log.warn("Schedule " + schedule.getName() + " skips index " + index + ", it doesn't exist anymore");
+            } else if (!count.equals(schedule.getArchivedIndices().get(index))) {
+                changed.add(index);
+                changedCounts.put(index, count);
+            }
+        }
+        if (changed.isEmpty()) {
+            log.info("All indices of schedule " + schedule.getName() + " are already archived");
+            return "Nothing to archive";
+        }
+        log.info("Schedule " + schedule.getName() + " skips " + (counts.size() - changed.size()) + " archived indices");
+        String id = archive(schedule.getStorageId(), archiveName, changed, ExecutionLane.Priority.SCHEDULED);
+        ArchiveInfo info = processRegistry.get(id);
+        if (info != null) {
+            onSuccess(info, () -> scheduleStore.archived(schedule.getName(), changedCounts, existing));
+        }
+        return id;
+    }
+
+    public boolean resetSchedule(String name) {
+        log.info("Reset archived indices of schedule: " + name);
+        return scheduleStore.reset(name);
+    }
+
+    private static void onSuccess(ArchiveInfo info, Runnable action) {
+        onFinished(info, finished -> {
+            if (finished.getState() == ArchiveInfo.State.SUCCESS) {
+                action.run();
+            }
+        });
+    }
+
+    private static void onFinished(ArchiveInfo info, Consumer<ArchiveInfo> action) {
+        AtomicBoolean done = new AtomicBoolean();
+        Consumer<ArchiveInfo> listener = new Consumer<ArchiveInfo>() {
+            @Override
+            public void accept(ArchiveInfo changed) {
+                if (changed.isFinished() && done.compareAndSet(false, true)) {
+                    changed.removeListener(this);
+                    action.accept(changed);
+                }
+            }
+        };
+        info.addListener(listener);
+        // the process may have finished before the listener was added
+        listener.accept(info);
+    }
+
+    public Optional<Schedule> getSchedule(String name) {
+        return scheduleStore.get(name);
+    }
+
+    void scheduleFired(String name, long fireTime) {
+        scheduleStore.fired(name, fireTime);
+    }
+
+    /**
+     * True if this node runs the window, a schedule registered on several nodes runs once per window.
+     * A window which another node runs is claimed again when its lease ends, in case that node has died.
+     */
+    boolean claimWindow(String name, long window) {
+        if (jobLock.claim(name, window)) {
+            return true;
+        }
+        OptionalLong retryAt = jobLock.retryAt(name, window);
+        if (retryAt.isPresent()) {
+            try {
+                scheduler.scheduleJob(TriggerBuilder.newTrigger()
+                        .withIdentity(name + "_retry_" + window + "_" + retryAt.getAsLong())
+                        .forJob(name)
+                        .usingJobData(ArchivingJob.WINDOW, window)
+                        .startAt(new Date(retryAt.getAsLong()))
+                        .build());
+            } catch (SchedulerException e) {
+                log.error("Can't schedule the retry of window " + window + " of schedule " + name + ": " + e.getMessage(), e);
+            }
+        }
+        return false;
+    }
+
+    private static Properties schedulerProperties(ArchivingPluginConfiguration configuration) {
+        Properties properties = new Properties();
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "ArchivingScheduler");
+        properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_CLASS, "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(configuration.getSchedulerThreads()));
+        properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+        return properties;
+    }
+
+    private void scheduleJob(Schedule schedule) throws SchedulerException {
+        JobDetail job = JobBuilder.newJob(ArchivingJob.class)
+                .withIdentity(schedule.getName())
+                .usingJobData(ArchivingJob.SCHEDULE, schedule.getName())
+                .build();
+        // a run delayed by busy Quartz threads is made once as soon as possible, not skipped
+        Trigger trigger = TriggerBuilder.newTrigger()
+                .withIdentity(schedule.getName())
+                .withSchedule(CronScheduleBuilder.cronSchedule(schedule.getPeriod())
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
+        scheduler.scheduleJob(job, trigger);
+    }
+
+    /**
+     * Registers the stored schedules in Quartz. A schedule which should have fired while Graylog was down
+     * is run once right away, however many runs were missed.
+     */
+    private void restoreSchedules() {
+        Date now = new Date();
+        for (Schedule schedule : scheduleStore.getAll()) {
+            try {
+                scheduleJob(schedule);
+                long last = schedule.getLastFireTime() != null ? schedule.getLastFireTime() : schedule.getCreationTime();
+                Date missed = new CronExpression(schedule.getPeriod()).getNextValidTimeAfter(new Date(last));
+                if (missed != null && missed.before(now)) {
+                    log.info("Schedule " + schedule.getName() + " missed the run at " + missed + ", run it now");
+                    scheduler.scheduleJob(TriggerBuilder.newTrigger()
+                            .withIdentity(schedule.getName() + "_missed")
+                            .forJob(schedule.getName())
+                            .usingJobData(ArchivingJob.WINDOW, missed.getTime())
+                            .startNow()
+                            .build());
+                }
+            } catch (SchedulerException | ParseException e) {
+                log.error("Error during restoring schedule " + schedule.getName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
     public String createFSSnapshotDirectory(String name, String snapshotDir) {
         CreateSnapshotRepository repository = new CreateSnapshotRepository
                 .Builder(name).settings(ImmutableMap.of("type", "fs",
@@ -356,14 +1267,7 @@ public class ArchivingService {
     }
 
     public void writeDirectoriesFile(String stream, String name) throws IOException {
-        directories.put(stream, name);
-        JSONObject jsonObject = new JSONObject(directories);
-        try (OutputStreamWriter file = new OutputStreamWriter(new FileOutputStream(directoriesFile), StandardCharsets.UTF_8)) {
-            file.write(jsonObject.toString());
-            file.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        repositoryRegistry.put(stream, name);
     }
 
     public String addFSSettings(String name, String snapshotDir) {
@@ -372,6 +1276,7 @@ public class ArchivingService {
                 snapshotDir = snapshotDirectory;
             String response = createFSSnapshotDirectory(name, snapshotDir);
             writeDirectoriesFile(name, snapshotDir + name);
+            repositoryHealth.invalidate(resolvePath(name));
             return response;
         } catch (IOException e) {
             log.error(e.getMessage());
@@ -387,6 +1292,7 @@ public class ArchivingService {
             else response = createS3SnapshotDirectory(endpoint, bucket, region);
             log.info("Response: " + response);
             writeDirectoriesFile(name, bucket);
+            repositoryHealth.invalidate(resolvePath(name));
             return response;
         } catch (IOException e) {
             log.error(e.getMessage());
@@ -0,0 +1,69 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * One archive, restore or delete of a batch sent to /batch.
+ */
+public class BatchOperation {
+
+    private final ArchiveInfo.Type type;
+
+    private final String storageId;
+
+    private final String archiveName;
+
+    private final Set<String> indices;
+
+    private final Long from;
+
+    private final Long to;
+
+    private BatchOperation(ArchiveInfo.Type type, String storageId, String archiveName, Set<String> indices,
+                           Long from, Long to) {
+        this.type = type;
+        this.storageId = storageId;
+        this.archiveName = archiveName;
+        this.indices = indices;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static BatchOperation archive(String storageId, String archiveName, Set<String> indices) {
+        return new BatchOperation(ArchiveInfo.Type.ARCHIVE, storageId, archiveName,
+                Collections.unmodifiableSet(indices), null, null);
+    }
+
+    public static BatchOperation restore(String storageId, String archiveName, Long from, Long to) {
+        return new BatchOperation(ArchiveInfo.Type.RESTORE, storageId, archiveName, Collections.emptySet(), from, to);
+    }
+
+    public static BatchOperation delete(String storageId, String archiveName) {
+        return new BatchOperation(ArchiveInfo.Type.DELETE, storageId, archiveName, Collections.emptySet(), null, null);
+    }
+
+    public ArchiveInfo.Type getType() {
+        return type;
+    }
+
+    public String getStorageId() {
+        return storageId;
+    }
+
+    public String getArchiveName() {
+        return archiveName;
+    }
+
+    public Set<String> getIndices() {
+        return indices;
+    }
+
+    public Long getFrom() {
+        return from;
+    }
+
+    public Long getTo() {
+        return to;
+    }
+}
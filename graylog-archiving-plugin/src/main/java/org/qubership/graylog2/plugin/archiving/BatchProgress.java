@@ -0,0 +1,107 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Progress of every operation of one batch process. A change of an item updates the status of the batch, so
+ * listeners of the batch see it.
+ */
+public class BatchProgress {
+
+    public enum ItemState {
+        PENDING, RUNNING, SUCCESS, FAILED
+    }
+
+    private final ArchiveInfo info;
+
+    private final List<Item> items;
+
+    BatchProgress(ArchiveInfo info, List<BatchOperation> operations) {
+        this.info = info;
+        List<Item> items = new ArrayList<>();
+        for (BatchOperation operation : operations) {
+            items.add(new Item(items.size(), operation));
+        }
+        this.items = Collections.unmodifiableList(items);
+        info.setBatch(this);
+        info.setStatus(summary());
+    }
+
+    List<Item> getItems() {
+        return items;
+    }
+
+    synchronized void started(Item item, String processId) {
+        item.state = ItemState.RUNNING;
+        item.processId = processId;
+        info.setStatus(summary());
+    }
+
+    synchronized void finished(Item item, boolean succeeded, String result) {
+        item.state = succeeded ? ItemState.SUCCESS : ItemState.FAILED;
+        item.result = result;
+        info.setStatus(summary());
+    }
+
+    synchronized int count(ItemState state) {
+        int count = 0;
+        for (Item item : items) {
+            if (item.state == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized String summary() {
+        return "Finished " + (count(ItemState.SUCCESS) + count(ItemState.FAILED)) + " of " + items.size()
+                + " operations, failed: " + count(ItemState.FAILED);
+    }
+
+    synchronized JSONArray toJson() {
+        JSONArray json = new JSONArray();
+        for (Item item : items) {
+            JSONObject itemJson = new JSONObject();
+            itemJson.put("index", item.index);
+            itemJson.put("type", item.operation.getType().name());
+            itemJson.put("storageId", item.operation.getStorageId());
+            itemJson.put("archiveName", item.operation.getArchiveName());
+            itemJson.put("state", item.state.name());
+            if (item.processId != null) {
+                itemJson.put("processId", item.processId);
+            }
+            if (item.result != null) {
+                itemJson.put("result", item.result);
+            }
+            json.put(itemJson);
+        }
+        return json;
+    }
+
+    static class Item {
+
+        private final int index;
+
+        private final BatchOperation operation;
+
+        private ItemState state = ItemState.PENDING;
+
+        private String processId;
+
+        private String result;
+
+        private Item(int index, BatchOperation operation) {
+            this.index = index;
+            this.operation = operation;
+        }
+
+        BatchOperation getOperation() {
+            return operation;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.DeleteByQuery;
+import io.searchbox.core.Get;
+import io.searchbox.core.Index;
+import io.searchbox.indices.CreateIndex;
+import io.searchbox.indices.IndicesExists;
+import org.json.JSONObject;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock shared by all Graylog nodes: a window is claimed by creating a document with the schedule name and
+ * the window time as its id in archiving_job_lock_index. Elasticsearch creates a document with a given id
+ * only once, so exactly one node gets the window and the others get a conflict.
+ * <p>
+ * A claim is a lease which the owning node renews until the run of the window is finished. A claim whose
+ * lease has expired is taken over by the next node which fires the window, so a window still runs if its
+ * node dies. Claims not written for archiving_job_lock_retention_days are deleted.
+ */
+@Singleton
+public class ElasticsearchJobLock implements ArchivingJobLock {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchJobLock.class);
+
+    private static final int NOT_FOUND = 404;
+
+    private static final int CONFLICT = 409;
+
+    private static final String TYPE = "_doc";
+
+    private static final String RUNNING = "RUNNING";
+
+    private static final String DONE = "DONE";
+
+    private final JestClient jestClient;
+
+    private final String index;
+
+    private final String node;
+
+    private final long leaseMillis;
+
+    private final long retentionMillis;
+
+    /**
+     * Claims of this node which are not released yet, by document id.
+     */
+    private final Map<String, Claim> held = new ConcurrentHashMap<>();
+
+    /**
+     * Lease ends of the windows which are run by other nodes, by document id.
+     */
+    private final Map<String, Long> retries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    @Inject
+    public ElasticsearchJobLock(@Named("ArchivingControlJestClient") JestClient jestClient,
+                                ArchivingPluginConfiguration configuration) {
+        this.jestClient = jestClient;
+        this.index = configuration.getJobLockIndex();
+        this.node = nodeName();
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(configuration.getJobLockLeaseSeconds());
+        this.retentionMillis = TimeUnit.DAYS.toMillis(configuration.getJobLockRetentionDays());
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("archiving-job-lock-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Creates the lock index, Graylog clusters usually don't let Elasticsearch create indices on the first write.
+     *
+     * @throws IllegalStateException if the index can't be created, schedules would silently never run otherwise
+     */
+    @Override
+    public void start() {
+        try {
+            if (!jestClient.execute(new IndicesExists.Builder(index).build()).isSucceeded()) {
+                JestResult result = jestClient.execute(new CreateIndex.Builder(index)
+                        .settings(ImmutableMap.of("settings", ImmutableMap.of("number_of_shards", 1)))
+                        .build());
+                // another node may have created it at the same time
+                if (!result.isSucceeded() && !jestClient.execute(new IndicesExists.Builder(index).build()).isSucceeded()) {
+                    throw new IllegalStateException("Can't create job lock index " + index + ": " + result.getErrorMessage());
+                }
+                log.info("Job lock index " + index + " is created");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't create job lock index " + index + ": " + e.getMessage(), e);
+        }
+        long renewMillis = Math.max(1, leaseMillis / 3);
+        executor.scheduleWithFixedDelay(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::deleteExpired, 0, 1, TimeUnit.HOURS);
+    }
+
+    @Override
+    public boolean claim(String schedule, long window) {
+        String id = schedule + "_" + window;
+        if (held.containsKey(id)) {
+            return false;
+        }
+        try {
+            JestResult result = jestClient.execute(write(schedule, window, RUNNING, null)
+                    .setParameter("op_type", "create")
+                    .build());
+            if (result.isSucceeded()) {
+                held.put(id, Claim.of(schedule, window, result));
+                return true;
+            }
+            if (result.getResponseCode() != CONFLICT) {
+                log.error("Can't claim window " + window + " of schedule " + schedule + ": " + result.getErrorMessage());
+                return false;
+            }
+            return takeOverIfStale(schedule, window);
+        } catch (IOException | RuntimeException e) {
+            // without Elasticsearch the archive can't be created anyway, so the window is not run twice instead
+            log.error("Can't claim window " + window + " of schedule " + schedule + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public OptionalLong retryAt(String schedule, long window) {
+        Long leaseUntil = retries.remove(schedule + "_" + window);
+        return leaseUntil == null ? OptionalLong.empty() : OptionalLong.of(leaseUntil + 1);
+    }
+
+    @Override
+    public void release(String schedule, long window) {
+        Claim claim = held.remove(schedule + "_" + window);
+        if (claim == null) {
+            return;
+        }
+        try {
+            JestResult result = jestClient.execute(write(schedule, window, DONE, claim).build());
+            if (!result.isSucceeded()) {
+                log.warn("Can't release window " + window + " of schedule " + schedule + ": " + result.getErrorMessage());
+            }
+        } catch (IOException e) {
+            log.warn("Can't release window " + window + " of schedule " + schedule + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A claim of this node which isn't held is left from before a restart, it's taken over right away.
+     */
+    private boolean takeOverIfStale(String schedule, long window) throws IOException {
+        JestResult current = jestClient.execute(new Get.Builder(index, schedule + "_" + window).type(TYPE).build());
+        if (!current.isSucceeded()) {
+            log.error("Can't read the claim of window " + window + " of schedule " + schedule + ": "
+                    + current.getErrorMessage());
+            return false;
+        }
+        JSONObject document = new JSONObject(current.getJsonString());
+        JSONObject source = document.getJSONObject("_source");
+        String owner = source.optString("node");
+        boolean stale = RUNNING.equals(source.optString("state"))
+                && (source.optLong("leaseUntil") < System.currentTimeMillis() || node.equals(owner));
+        if (!stale) {
+            if (RUNNING.equals(source.optString("state"))) {
+                log.info("Window " + window + " of schedule " + schedule + " is run by node " + owner);
+                retries.put(schedule + "_" + window, source.optLong("leaseUntil"));
+            }
+            return false;
+        }
+        Claim previous = new Claim(schedule, window, document.getLong("_seq_no"), document.getLong("_primary_term"));
+        JestResult result = jestClient.execute(write(schedule, window, RUNNING, previous).build());
+        if (result.isSucceeded()) {
+            log.warn("Node " + owner + " stopped renewing window " + window + " of schedule " + schedule + ", take it over");
+            held.put(schedule + "_" + window, Claim.of(schedule, window, result));
+            return true;
+        }
+        log.info("Window " + window + " of schedule " + schedule + " is taken over by another node");
+        return false;
+    }
+
+    /**
+     * Extends the leases of the held claims. A claim which was taken over by another node, for example after
+     * a long pause of this one, is dropped.
+     */
+    private void renew() {
+        for (Map.Entry<String, Claim> entry : held.entrySet()) {
+            Claim claim = entry.getValue();
+            try {
+                JestResult result = jestClient.execute(write(claim.schedule, claim.window, RUNNING, claim).build());
+                if (result.isSucceeded()) {
+                    held.replace(entry.getKey(), claim, Claim.of(claim.schedule, claim.window, result));
+                } else if (result.getResponseCode() == CONFLICT || result.getResponseCode() == NOT_FOUND) {
+                    log.warn("Window " + claim.window + " of schedule " + claim.schedule + " was taken over by another node");
+                    held.remove(entry.getKey(), claim);
+                } else {
+                    log.warn("Can't renew window " + claim.window + " of schedule " + claim.schedule + ": "
+                            + result.getErrorMessage());
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't renew window " + claim.window + " of schedule " + claim.schedule + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteExpired() {
+        String query = new JSONObject().put("query", new JSONObject().put("range", new JSONObject()
+                .put("updateTime", new JSONObject().put("lt", System.currentTimeMillis() - retentionMillis))))
+                .toString();
+        try {
+            JestResult result = jestClient.execute(new DeleteByQuery.Builder(query).addIndex(index).build());
+            if (!result.isSucceeded()) {
+                log.warn("Can't delete expired claims from " + index + ": " + result.getErrorMessage());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't delete expired claims from " + index + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param previous the write only succeeds if the document wasn't changed since this claim, null for any
+     */
+    private Index.Builder write(String schedule, long window, String state, Claim previous) {
+        long now = System.currentTimeMillis();
+        Index.Builder builder = new Index.Builder(ImmutableMap.of(
+                "schedule", schedule,
+                "window", window,
+                "node", node,
+                "state", state,
+                "updateTime", now,
+                "leaseUntil", now + leaseMillis))
+                .index(index)
+                .type(TYPE)
+                .id(schedule + "_" + window);
+        if (previous != null) {
+            builder.setParameter("if_seq_no", previous.seqNo)
+                    .setParameter("if_primary_term", previous.primaryTerm);
+        }
+        return builder;
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * Version of the claim document written by this node.
+     */
+    private static class Claim {
+
+        private final String schedule;
+
+        private final long window;
+
+        private final long seqNo;
+
+        private final long primaryTerm;
+
+        private Claim(String schedule, long window, long seqNo, long primaryTerm) {
+            this.schedule = schedule;
+            this.window = window;
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+        }
+
+        private static Claim of(String schedule, long window, JestResult written) {
+            JSONObject document = new JSONObject(written.getJsonString());
+            return new Claim(schedule, window, document.getLong("_seq_no"), document.getLong("_primary_term"));
+        }
+    }
+}
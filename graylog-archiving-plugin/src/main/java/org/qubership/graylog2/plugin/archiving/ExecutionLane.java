@@ -0,0 +1,110 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool of one kind of operations, so long archives can't hold back a restore. Waiting tasks are
+ * ordered by priority and then by submission: steps of running processes go first, then processes started
+ * by a user, then scheduled ones.
+ */
+class ExecutionLane {
+
+    enum Priority {
+        CONTINUATION, INTERACTIVE, SCHEDULED
+    }
+
+    private final String name;
+
+    private final int queueSize;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ArchivingMetrics metrics;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    ExecutionLane(String name, int concurrency, int queueSize, ArchivingMetrics metrics) {
+        this.name = name;
+        this.queueSize = queueSize;
+        this.metrics = metrics;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNameFormat("archiving-" + name + "-%d")
+                .setDaemon(true)
+                .build());
+        metrics.monitorExecutor("lane." + name, executor);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Number of processes waiting for a worker, steps of running processes are not counted.
+     */
+    int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * Queues a new process, the process fails right away if archiving_{lane}_queue_size processes are
+     * already waiting.
+     */
+    synchronized void submit(ArchiveInfo info, Priority priority, Runnable task) {
+        if (getQueueDepth() >= queueSize) {
+            String reason = "Too many " + name + " operations are waiting: " + queueSize + ". Try again later";
+            info.fail(reason);
+            throw new RejectedExecutionException(reason);
+        }
+        info.queued(name, this::getQueueDepth);
+        waiting.incrementAndGet();
+        executor.execute(new Task(priority, sequence.getAndIncrement(), () -> {
+            waiting.decrementAndGet();
+            metrics.laneWaited(name, info.dequeued());
+            task.run();
+        }));
+    }
+
+    /**
+     * Executor for the next steps of running processes, they're not limited by the queue size.
+     */
+    Executor continuations() {
+        return task -> executor.execute(new Task(Priority.CONTINUATION, sequence.getAndIncrement(), task));
+    }
+
+    private static class Task implements Runnable, Comparable<Task> {
+
+        private final Priority priority;
+
+        private final long sequence;
+
+        private final Runnable task;
+
+        private Task(Priority priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.collect.Iterables;
+import io.searchbox.core.Cat;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of _cat/indices (name, creation date, store size, document count). The whole list is reloaded when it is
+ * older than archiving_index_cache_ttl_seconds, indices marked by {@link #invalidate(Collection)} are
+ * requested by name on the next read.
+ */
+@Singleton
+public class IndexMetadataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexMetadataCache.class);
+
+    private static final String COLUMNS = "index,creation.date,store.size,docs.count";
+
+    private static final int INDICES_PER_REQUEST = 50;
+
+    private final ElasticsearchStreamReader streamReader;
+
+    private final long ttlMillis;
+
+    private final Set<String> invalidated;
+
+    private volatile Map<String, ShortIndex> indices;
+
+    private volatile long loadedAt;
+
+    @Inject
+    public IndexMetadataCache(ElasticsearchStreamReader streamReader, ArchivingPluginConfiguration configuration) {
+        this.streamReader = streamReader;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(configuration.getIndexCacheTtlSeconds());
+        this.invalidated = ConcurrentHashMap.newKeySet();
+        this.indices = Collections.emptyMap();
+    }
+
+    public Collection<ShortIndex> getIndices() throws IOException {
+        if (System.currentTimeMillis() - loadedAt >= ttlMillis) {
+            reload();
+        } else if (!invalidated.isEmpty()) {
+            reloadInvalidated();
+        }
+        return indices.values();
+    }
+
+    /**
+     * store.size of the given indices, indices which don't exist anymore are missing in the result.
+     */
+    public Map<String, Long> getStoreSizes(Collection<String> names) throws IOException {
+        getIndices();
+        Map<String, ShortIndex> current = indices;
+        Map<String, Long> sizes = new HashMap<>();
+        for (String name : names) {
+            ShortIndex index = current.get(name);
+            if (index != null) {
+                sizes.put(name, index.getStoreSize());
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * docs.count of the given indices, indices which don't exist anymore are missing in the result.
+     */
+    public Map<String, Long> getDocsCounts(Collection<String> names) throws IOException {
+        getIndices();
+        Map<String, ShortIndex> current = indices;
+        Map<String, Long> counts = new HashMap<>();
+        for (String name : names) {
+            ShortIndex index = current.get(name);
+            if (index != null) {
+                counts.put(name, index.getDocsCount());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Drops the whole list, the next read loads it from Elasticsearch.
+     */
+    public void invalidate() {
+        loadedAt = 0;
+    }
+
+    /**
+     * Marks indices which were created, changed or removed, only they are requested on the next read.
+     */
+    public void invalidate(Collection<String> names) {
+        invalidated.addAll(names);
+    }
+
+    private synchronized void reload() throws IOException {
+        if (System.currentTimeMillis() - loadedAt < ttlMillis) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        invalidated.clear();
+        Map<String, ShortIndex> loaded = new LinkedHashMap<>();
+        for (ShortIndex index : request(Collections.emptyList())) {
+            loaded.put(index.getName(), index);
+        }
+        indices = Collections.unmodifiableMap(loaded);
+        loadedAt = startedAt;
+        log.debug("Index metadata is reloaded: " + loaded.size() + " indices");
+    }
+
+    private synchronized void reloadInvalidated() throws IOException {
+        List<String> names = new ArrayList<>(invalidated);
+        if (names.isEmpty()) {
+            return;
+        }
+        invalidated.removeAll(names);
+        Map<String, ShortIndex> updated = new LinkedHashMap<>(indices);
+        names.forEach(updated::remove);
+        try {
+            for (List<String> batch : Iterables.partition(names, INDICES_PER_REQUEST)) {
+                for (ShortIndex index : request(batch)) {
+                    updated.put(index.getName(), index);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't refresh metadata of " + names.size() + " indices, reloading all: " + e.getMessage());
+            loadedAt = 0;
+            reload();
+            return;
+        }
+        indices = Collections.unmodifiableMap(updated);
+        log.debug("Index metadata is refreshed for " + names.size() + " indices");
+    }
+
+    private List<ShortIndex> request(List<String> names) throws IOException {
+        Cat.IndicesBuilder builder = new Cat.IndicesBuilder()
+                .setParameter("h", COLUMNS)
+                .setParameter("bytes", "b");
+        if (!names.isEmpty()) {
+            builder.addIndex(names)
+                    .ignoreUnavailable(true);
+        }
+        return streamReader.read(builder.build(), ShortIndex::readList);
+    }
+}
@@ -0,0 +1,25 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lock of a single Graylog node: a window is claimed if it's later than the last claimed window of the
+ * schedule. Nothing is shared with other nodes.
+ */
+@Singleton
+public class LocalJobLock implements ArchivingJobLock {
+
+    private final Map<String, Long> lastWindows = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean claim(String schedule, long window) {
+        boolean[] claimed = new boolean[1];
+        lastWindows.compute(schedule, (name, last) -> {
+            claimed[0] = last == null || window > last;
+            return claimed[0] ? window : last;
+        });
+        return claimed[0];
+    }
+}
@@ -0,0 +1,326 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archive, restore and delete processes of the node. Running processes are always kept in memory, finished
+ * ones are kept until there are too many of them or they get older than the retention. Evicted processes are
+ * appended to a history file as compact JSON lines, so they can still be looked up and listed.
+ * <p>
+ * The history file is written and trimmed by a single writer thread, so neither the registry lock nor the
+ * thread which registers a process waits for the file.
+ */
+@Singleton
+public class ProcessRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessRegistry.class);
+
+    private static final String HISTORY_FILE = "/usr/share/graylog/data/archives/processes.log";
+
+    private static final int MAX_HISTORY_RESULT_LENGTH = 4096;
+
+    private static final Comparator<JSONObject> OLDEST_FIRST = Comparator
+            .comparingLong(json -> json.optLong("startTimeMillis"));
+
+    private final Path file;
+
+    private final int maxFinished;
+
+    private final long retentionMillis;
+
+    private final int maxHistorySize;
+
+    private final Map<String, ArchiveInfo> processes;
+
+    /**
+     * History entries of evicted processes which the writer hasn't appended to the file yet, by process id.
+     */
+    private final Map<String, JSONObject> unwritten;
+
+    private final ExecutorService historyWriter;
+
+    /**
+     * Only used by the writer thread.
+     */
+    private int historySize = -1;
+
+    @Inject
+    public ProcessRegistry(ArchivingPluginConfiguration configuration) {
+        this.file = Paths.get(HISTORY_FILE);
+        this.maxFinished = configuration.getProcessMaxFinished();
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(configuration.getProcessRetentionMinutes());
+        this.maxHistorySize = configuration.getProcessHistorySize();
+        this.processes = new LinkedHashMap<>();
+        this.unwritten = new LinkedHashMap<>();
+        this.historyWriter = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("archiving-process-history-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    public synchronized void register(ArchiveInfo info) {
+        processes.put(info.getId(), info);
+        evict();
+    }
+
+    /**
+     * Process kept in memory, null if it's unknown or already moved to the history.
+     */
+    public synchronized ArchiveInfo get(String id) {
+        return processes.get(id);
+    }
+
+    /**
+     * Process from memory or from the history, null if it's unknown. The history is read outside of the lock,
+     * so a long history doesn't block process updates.
+     */
+    public JSONObject find(String id) {
+        synchronized (this) {
+            evict();
+            ArchiveInfo info = processes.get(id);
+            if (info != null) {
+                return info.toJson();
+            }
+            JSONObject entry = unwritten.get(id);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        JSONObject found = null;
+        for (JSONObject entry : readHistory(file)) {
+            if (id.equals(entry.optString("id"))) {
+                found = entry;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Processes ordered from the newest to the oldest.
+     *
+     * @param state processes in this state, any state if null
+     * @param type  processes of this type, any type if null
+     * @param from  processes started at or after this time in millis, no lower bound if null
+     * @param to    processes started at or before this time in millis, no upper bound if null
+     */
+    public JSONObject list(ArchiveInfo.State state, ArchiveInfo.Type type, Long from, Long to,
+                           int offset, int limit) {
+        List<JSONObject> current = new ArrayList<>();
+        synchronized (this) {
+            evict();
+            for (ArchiveInfo info : processes.values()) {
+                current.add(info.toJson());
+            }
+            current.addAll(unwritten.values());
+        }
+        // read outside of the lock, a process evicted meanwhile can be both in the copy and in the history
+        Set<String> currentIds = new HashSet<>();
+        current.forEach(entry -> currentIds.add(entry.optString("id")));
+        List<JSONObject> candidates = new ArrayList<>(current);
+        for (JSONObject entry : readHistory(file)) {
+            if (!currentIds.contains(entry.optString("id"))) {
+                candidates.add(entry);
+            }
+        }
+        // keeps only the newest offset + limit matches, the history can be much larger than a page
+        PriorityQueue<JSONObject> newest = new PriorityQueue<>(OLDEST_FIRST);
+        int total = 0;
+        for (JSONObject entry : candidates) {
+            long startTime = entry.optLong("startTimeMillis");
+            if ((state != null && !state.name().equals(entry.optString("state")))
+                    || (type != null && !type.name().equals(entry.optString("type")))
+                    || (from != null && startTime < from) || (to != null && startTime > to)) {
+                continue;
+            }
+            total++;
+            newest.add(entry);
+            if (newest.size() > offset + limit) {
+                newest.poll();
+            }
+        }
+        List<JSONObject> ordered = new ArrayList<>(newest);
+        ordered.sort(OLDEST_FIRST.reversed());
+        JSONArray page = new JSONArray();
+        for (int i = offset; i < ordered.size(); i++) {
+            page.put(ordered.get(i));
+        }
+        JSONObject result = new JSONObject();
+        result.put("total", total);
+        result.put("offset", offset);
+        result.put("limit", limit);
+        result.put("processes", page);
+        return result;
+    }
+
+    private void evict() {
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        int finished = 0;
+        for (ArchiveInfo info : processes.values()) {
+            if (info.isFinished()) {
+                finished++;
+            }
+        }
+        List<ArchiveInfo> evicted = new ArrayList<>();
+        Iterator<ArchiveInfo> iterator = processes.values().iterator();
+        while (iterator.hasNext()) {
+            ArchiveInfo info = iterator.next();
+            if (!info.isFinished()) {
+                continue;
+            }
+            if (finished > maxFinished || info.getEndTime().getTime() < expiredBefore) {
+                iterator.remove();
+                evicted.add(info);
+                finished--;
+            }
+        }
+        if (evicted.isEmpty()) {
+            return;
+        }
+        List<JSONObject> entries = new ArrayList<>();
+        for (ArchiveInfo info : evicted) {
+            JSONObject entry = toHistoryEntry(info);
+            unwritten.put(info.getId(), entry);
+            entries.add(entry);
+        }
+        historyWriter.execute(() -> appendHistory(entries));
+    }
+
+    private static JSONObject toHistoryEntry(ArchiveInfo info) {
+        JSONObject entry = info.toJson();
+        // progress is only useful while a restore is running
+        entry.remove("progress");
+        String result = info.getResult();
+        if (result != null && result.length() > MAX_HISTORY_RESULT_LENGTH) {
+            entry.remove("result");
+            entry.put("resultTruncated", true);
+        }
+        return entry;
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void appendHistory(List<JSONObject> entries) {
+        List<String> lines = new ArrayList<>();
+        for (JSONObject entry : entries) {
+            lines.add(entry.toString());
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (historySize >= 0) {
+                historySize += lines.size();
+            }
+            trimHistoryIfNeeded();
+        } catch (IOException e) {
+            // history is best effort, losing it must not break a running process
+            log.error("Error during writing process history: " + e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                for (JSONObject entry : entries) {
+                    unwritten.remove(entry.optString("id"), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Needs no lock: trimming replaces the file atomically and a line cut by a running append is skipped.
+     */
+    private static List<JSONObject> readHistory(Path file) {
+        List<JSONObject> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    entries.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    // the last line can be cut if the node stopped in the middle of a write
+                    log.warn("Skip broken entry of process history: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error during reading process history: " + e.getMessage(), e);
+        }
+        return entries;
+    }
+
+    /**
+     * Keeps the newest half of the allowed history once it grows over the limit, so the file is not rewritten
+     * on every eviction.
+     */
+    private void trimHistoryIfNeeded() {
+        if (historySize < 0) {
+            historySize = readHistory(file).size();
+        }
+        if (historySize <= maxHistorySize) {
+            return;
+        }
+        int keep = maxHistorySize / 2;
+        Deque<String> newest = new ArrayDeque<>(keep + 1);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    newest.addLast(line);
+                    if (newest.size() > keep) {
+                        newest.removeFirst();
+                    }
+                }
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String line : newest) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            historySize = newest.size();
+            log.debug("Process history is trimmed to " + historySize + " entries");
+        } catch (IOException e) {
+            log.error("Error during trimming process history: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import io.searchbox.client.JestResult;
+import org.qubership.graylog2.plugin.utils.WaitScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the snapshot, restore and delete operations in flight. An operation which conflicts with
+ * a running one waits until it's finished, operations on other repositories and other indices run in
+ * parallel:
+ * <ul>
+ * <li>a delete conflicts with every operation on the same repository,</li>
+ * <li>a snapshot conflicts with another snapshot of the same index.</li>
+ * </ul>
+ * Waiting operations are started in the order they came. An operation overtakes an earlier conflicting one
+ * only while that one still waits for an operation which was running when it came and which the later one
+ * doesn't conflict with, so a delete waiting for a long restore doesn't hold up snapshots, and it's started
+ * as soon as the operations it came after are finished. Requests which Elasticsearch still rejects with
+ * concurrent_snapshot_execution_exception, for example because of snapshots made outside of the plugin, are
+ * retried with backoff.
+ */
+@Singleton
+public class RepositoryCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryCoordinator.class);
+
+    private static final String CONCURRENT_SNAPSHOT_EXECUTION = "concurrent_snapshot_execution_exception";
+
+    private static final WaitScheduler.Backoff RETRY_BACKOFF = new WaitScheduler.Backoff(1, 30,
+            TimeUnit.HOURS.toSeconds(1), TimeUnit.SECONDS);
+
+    public enum Operation {
+        SNAPSHOT, RESTORE, DELETE
+    }
+
+    private final WaitScheduler waitScheduler;
+
+    private final List<Permit> running = new ArrayList<>();
+
+    private final Map<Permit, CompletableFuture<Permit>> waiting = new LinkedHashMap<>();
+
+    @Inject
+    public RepositoryCoordinator(WaitScheduler waitScheduler) {
+        this.waitScheduler = waitScheduler;
+    }
+
+    /**
+     * Completes when the operation can start, the returned permit must be closed once it's finished.
+     *
+     * @param indices indices of a snapshot, not used by other operations
+     */
+    public CompletableFuture<Permit> acquire(String repository, Operation operation, Collection<String> indices) {
+        Permit permit = new Permit(repository, operation, indices);
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (conflicts(permit, running) || waitsFor(permit, waiting.keySet())) {
+                log.info(operation + " on repository " + repository + " waits for running operations");
+                for (Permit other : running) {
+                    if (permit.conflictsWith(other)) {
+                        permit.blockers.add(other);
+                    }
+                }
+                waiting.put(permit, future);
+                return future;
+            }
+            running.add(permit);
+        }
+        future.complete(permit);
+        return future;
+    }
+
+    /**
+     * Sends the request and repeats it while Elasticsearch rejects it with
+     * concurrent_snapshot_execution_exception. Other results are returned as they are.
+     *
+     * @param executor runs the repeated requests, they block as long as the first one
+     */
+    public <T extends JestResult> CompletableFuture<T> execute(String name, Executor executor, Request<T> request) {
+        T result;
+        try {
+            result = request.send();
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (!isConcurrentExecution(result)) {
+            return CompletableFuture.completedFuture(result);
+        }
+        log.info(name + " is rejected because of another snapshot operation, retry later");
+        return waitScheduler.await(name, () -> {
+            T retried = request.send();
+            return isConcurrentExecution(retried) ? null : retried;
+        }, RETRY_BACKOFF, executor);
+    }
+
+    private void release(Permit permit) {
+        List<CompletableFuture<Permit>> started = new ArrayList<>();
+        List<Permit> startedPermits = new ArrayList<>();
+        synchronized (this) {
+            if (!running.remove(permit)) {
+                return;
+            }
+            for (Permit next : waiting.keySet()) {
+                next.blockers.remove(permit);
+            }
+            List<Permit> before = new ArrayList<>();
+            Iterator<Map.Entry<Permit, CompletableFuture<Permit>>> iterator = waiting.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Permit, CompletableFuture<Permit>> next = iterator.next();
+                if (!conflicts(next.getKey(), running) && !waitsFor(next.getKey(), before)) {
+                    iterator.remove();
+                    running.add(next.getKey());
+                    started.add(next.getValue());
+                    startedPermits.add(next.getKey());
+                } else {
+                    before.add(next.getKey());
+                }
+            }
+        }
+        // completed outside of the lock, the callers continue their processes on this thread
+        for (int i = 0; i < started.size(); i++) {
+            started.get(i).complete(startedPermits.get(i));
+        }
+    }
+
+    private static boolean conflicts(Permit permit, Collection<Permit> others) {
+        for (Permit other : others) {
+            if (permit.conflictsWith(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if the permit has to wait for one of the earlier waiting permits.
+     */
+    private static boolean waitsFor(Permit permit, Collection<Permit> earlier) {
+        for (Permit other : earlier) {
+            if (permit.conflictsWith(other) && !other.canBeOvertakenBy(permit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConcurrentExecution(JestResult result) {
+        return !result.isSucceeded() && result.getJsonString() != null
+                && result.getJsonString().contains(CONCURRENT_SNAPSHOT_EXECUTION);
+    }
+
+    @FunctionalInterface
+    public interface Request<T extends JestResult> {
+
+        T send() throws IOException;
+    }
+
+    public class Permit implements AutoCloseable {
+
+        private final String repository;
+
+        private final Operation operation;
+
+        private final Set<String> indices;
+
+        /**
+         * Running operations which this waiting one came after and still waits for.
+         */
+        private final List<Permit> blockers = new ArrayList<>();
+
+        private Permit(String repository, Operation operation, Collection<String> indices) {
+            this.repository = repository;
+            this.operation = operation;
+            this.indices = operation == Operation.SNAPSHOT ? new HashSet<>(indices) : Collections.emptySet();
+        }
+
+        private boolean conflictsWith(Permit other) {
+            if (repository.equals(other.repository)
+                    && (operation == Operation.DELETE || other.operation == Operation.DELETE)) {
+                return true;
+            }
+            return operation == Operation.SNAPSHOT && other.operation == Operation.SNAPSHOT
+                    && !Collections.disjoint(indices, other.indices);
+        }
+
+        private boolean canBeOvertakenBy(Permit later) {
+            for (Permit blocker : blockers) {
+                if (!later.conflictsWith(blocker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Finishes the operation and starts the waiting ones which don't conflict anymore.
+         */
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
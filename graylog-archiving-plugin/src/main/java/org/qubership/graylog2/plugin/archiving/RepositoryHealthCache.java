@@ -0,0 +1,168 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.qubership.graylog2.plugin.utils.VerifyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of _snapshot/{repository}/_verify per repository. A healthy result is reused for
+ * archiving_repository_health_ttl_seconds and a failed one for archiving_repository_failure_ttl_seconds, so
+ * a broken path or expired S3 credentials are reported before a process is started instead of after a
+ * long-running snapshot fails.
+ */
+@Singleton
+public class RepositoryHealthCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryHealthCache.class);
+
+    private final JestClient jestClient;
+
+    private final ArchivingMetrics metrics;
+
+    private final long healthyTtlMillis;
+
+    private final long failureTtlMillis;
+
+    private final Map<String, Health> healths = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    @Inject
+    public RepositoryHealthCache(@Named("ArchivingControlJestClient") JestClient jestClient, ArchivingMetrics metrics,
+                                 ArchivingPluginConfiguration configuration) {
+        this.jestClient = jestClient;
+        this.metrics = metrics;
+        this.healthyTtlMillis = TimeUnit.SECONDS.toMillis(configuration.getRepositoryHealthTtlSeconds());
+        this.failureTtlMillis = TimeUnit.SECONDS.toMillis(configuration.getRepositoryFailureTtlSeconds());
+    }
+
+    /**
+     * Cached health of the repository, verified again if it's expired. Concurrent callers wait for one
+     * verification instead of sending their own.
+     */
+    public Health check(String repository) {
+        Health health = healths.get(repository);
+        if (isFresh(health)) {
+            return health;
+        }
+        synchronized (locks.computeIfAbsent(repository, key -> new Object())) {
+            health = healths.get(repository);
+            if (isFresh(health)) {
+                return health;
+            }
+            health = verify(repository, health);
+            healths.put(repository, health);
+            return health;
+        }
+    }
+
+    /**
+     * Fails if the repository is not healthy.
+     */
+    public void require(String repository) {
+        Health health = check(repository);
+        if (!health.isHealthy()) {
+            throw new IllegalStateException("Repository " + repository + " is not available. Reason: "
+                    + health.getFailure());
+        }
+    }
+
+    /**
+     * Forgets the cached health, for example after the repository settings are changed.
+     */
+    public void invalidate(String repository) {
+        healths.remove(repository);
+    }
+
+    public Map<String, Health> getAll() {
+        return new TreeMap<>(healths);
+    }
+
+    private boolean isFresh(Health health) {
+        if (health == null) {
+            return false;
+        }
+        long ttl = health.isHealthy() ? healthyTtlMillis : failureTtlMillis;
+        return System.currentTimeMillis() - health.getCheckedAt() < ttl;
+    }
+
+    private Health verify(String repository, Health previous) {
+        long start = System.currentTimeMillis();
+        String failure;
+        try {
+            JestResult result = jestClient.execute(new VerifyRepository.Builder(repository).build());
+            failure = result.isSucceeded() ? null : result.getErrorMessage();
+        } catch (IOException | RuntimeException e) {
+            failure = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        }
+        long latency = System.currentTimeMillis() - start;
+        metrics.repositoryVerified(latency, failure == null);
+        int failures = previous == null ? 0 : previous.getConsecutiveFailures();
+        if (failure == null) {
+            if (failures > 0) {
+                log.info("Repository " + repository + " is healthy again");
+            }
+            return new Health(start, latency, 0, null);
+        }
+        log.warn("Verification of repository " + repository + " failed: " + failure);
+        return new Health(start, latency, failures + 1, failure);
+    }
+
+    public static class Health {
+
+        private final long checkedAt;
+
+        private final long latencyMillis;
+
+        private final int consecutiveFailures;
+
+        private final String failure;
+
+        Health(long checkedAt, long latencyMillis, int consecutiveFailures, String failure) {
+            this.checkedAt = checkedAt;
+            this.latencyMillis = latencyMillis;
+            this.consecutiveFailures = consecutiveFailures;
+            this.failure = failure;
+        }
+
+        @JsonProperty("healthy")
+        public boolean isHealthy() {
+            return failure == null;
+        }
+
+        @JsonProperty("checkedAt")
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+
+        @JsonProperty("latencyMillis")
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        @JsonProperty("consecutiveFailures")
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        @JsonProperty("failure")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage id to snapshot directory (or bucket) from directories.json. The registry is an immutable snapshot
+ * swapped on every change, so lookups never lock and never see a half-applied update. Changes are written to
+ * a temporary file and renamed over directories.json, and edits made to the file outside of the plugin are
+ * picked up by a file watcher.
+ */
+@Singleton
+public class RepositoryRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryRegistry.class);
+
+    private static final String DIRECTORIES_FILE = "/usr/share/graylog/data/config/directories.json";
+
+    private static final TypeReference<LinkedHashMap<String, String>> DIRECTORIES_TYPE =
+            new TypeReference<LinkedHashMap<String, String>>() {
+            };
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile State state;
+
+    public RepositoryRegistry() {
+        this.file = Paths.get(DIRECTORIES_FILE);
+        this.objectMapper = new ObjectMapper();
+        this.state = new State(read());
+        watch();
+    }
+
+    /**
+     * Storage id to the directory or bucket it was registered with.
+     */
+    public Map<String, String> getDirectories() {
+        return state.directories;
+    }
+
+    public boolean contains(String storageId) {
+        return state.directories.containsKey(storageId);
+    }
+
+    /**
+     * Name of the Elasticsearch snapshot repository of the storage: the last part of its directory.
+     */
+    public String resolveRepository(String storageId) {
+        String repository = state.repositories.get(storageId);
+        if (repository == null) {
+            throw new IllegalArgumentException("Storage " + storageId + " is not registered");
+        }
+        return repository;
+    }
+
+    public synchronized void put(String storageId, String directory) throws IOException {
+        Map<String, String> directories = new LinkedHashMap<>(state.directories);
+        directories.put(storageId, directory);
+        write(directories);
+        state = new State(directories);
+    }
+
+    /**
+     * Reads directories.json again and returns the registered directories.
+     */
+    public synchronized Map<String, String> reload() {
+        Map<String, String> directories = read();
+        if (!directories.equals(state.directories)) {
+            state = new State(directories);
+            log.info("Storage directories are reloaded: " + directories.keySet());
+        }
+        return state.directories;
+    }
+
+    private Map<String, String> read() {
+        if (!Files.exists(file)) {
+            log.warn("File " + file + " doesn't exist, no storage is registered");
+            return new LinkedHashMap<>();
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), DIRECTORIES_TYPE);
+        } catch (IOException e) {
+            // a broken file must not unregister every storage, so the last good state is kept
+            log.error("Error during reading " + file + ": " + e.getMessage(), e);
+            return state == null ? new LinkedHashMap<>() : state.directories;
+        }
+    }
+
+    private void write(Map<String, String> directories) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), directories);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void watch() {
+        Path directory = file.getParent();
+        if (!Files.isDirectory(directory)) {
+            log.warn("Directory " + directory + " doesn't exist, changes of " + file.getFileName() + " are not watched");
+            return;
+        }
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("Can't watch " + file + ": " + e.getMessage());
+            return;
+        }
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (file.getFileName().equals(event.context())
+                                || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        reload();
+                    }
+                    if (!key.reset()) {
+                        log.warn("Directory " + directory + " is not watched anymore");
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                log.debug("Watching of " + file + " is stopped");
+            }
+        }, "archiving-directories-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static class State {
+
+        private final Map<String, String> directories;
+
+        private final Map<String, String> repositories;
+
+        private State(Map<String, String> directories) {
+            this.directories = ImmutableMap.copyOf(directories);
+            ImmutableMap.Builder<String, String> repositories = ImmutableMap.builder();
+            for (Map.Entry<String, String> entry : directories.entrySet()) {
+                String path = entry.getValue();
+                repositories.put(entry.getKey(), path.contains("/") ? path.substring(path.lastIndexOf('/') + 1) : path);
+            }
+            this.repositories = repositories.build();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes how the indices of one snapshot are renamed to restored_N with as few RestoreSnapshot
+ * requests as possible.
+ * <p>
+ * Elasticsearch applies one rename_pattern/rename_replacement pair to every index of a request, so
+ * sequential numbers can't be assigned inside one request. Instead indices with the same prefix and the
+ * same width of the numeric suffix (graylog_101, graylog_102, ...) are restored together and the suffix is
+ * kept: restored_{base}{suffix}. The base is chosen so the numbers of every group lie above the numbers
+ * already taken. Indices without a numeric suffix are restored one by one as before.
+ */
+public class RestorePlan {
+
+    private static final String RESTORED_INDEX_PREFIX = "restored_";
+
+    private static final Pattern NUMBERED_INDEX = Pattern.compile("^(.+)_(\\d+)$");
+
+    private final List<Request> requests;
+
+    private final Map<String, String> renamed;
+
+    private final int lastNumber;
+
+    private RestorePlan(List<Request> requests, Map<String, String> renamed, int lastNumber) {
+        this.requests = requests;
+        this.renamed = renamed;
+        this.lastNumber = lastNumber;
+    }
+
+    /**
+     * @param indices    indices of one snapshot
+     * @param lastNumber the biggest number already used by restored_N indices
+     */
+    public static RestorePlan create(Collection<String> indices, int lastNumber) {
+        Map<String, List<String>> groups = new TreeMap<>();
+        List<String> singles = new ArrayList<>();
+        for (String index : indices) {
+            Matcher matcher = NUMBERED_INDEX.matcher(index);
+            if (matcher.matches()) {
+                groups.computeIfAbsent(matcher.group(1) + "/" + matcher.group(2).length(), k -> new ArrayList<>())
+                        .add(index);
+            } else {
+                singles.add(index);
+            }
+        }
+        List<Request> requests = new ArrayList<>();
+        Map<String, String> renamed = new LinkedHashMap<>();
+        long next = (long) lastNumber + 1;
+        for (List<String> group : groups.values()) {
+            if (group.size() == 1) {
+                singles.add(group.get(0));
+                continue;
+            }
+            int width = suffix(group.get(0)).length();
+            long scale = pow10(width);
+            if (scale < 0) {
+                singles.addAll(group);
+                continue;
+            }
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (String index : group) {
+                long suffix = Long.parseLong(suffix(index));
+                min = Math.min(min, suffix);
+                max = Math.max(max, suffix);
+            }
+            long base = Math.max(1, ceilDiv(next - min, scale));
+            if (base * scale + max > Integer.MAX_VALUE) {
+                singles.addAll(group);
+                continue;
+            }
+            for (String index : group) {
+                renamed.put(index, RESTORED_INDEX_PREFIX + (base * scale + Long.parseLong(suffix(index))));
+            }
+            requests.add(new Request(group, "(.+)_(\\d+)", RESTORED_INDEX_PREFIX + base + "$2"));
+            next = base * scale + max + 1;
+        }
+        for (String index : singles) {
+            String name = RESTORED_INDEX_PREFIX + next++;
+            renamed.put(index, name);
+            requests.add(new Request(Collections.singletonList(index), "(.+)", name));
+        }
+        return new RestorePlan(requests, renamed, (int) (next - 1));
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Original index name to restored index name.
+     */
+    public Map<String, String> getRenamed() {
+        return renamed;
+    }
+
+    public int getLastNumber() {
+        return lastNumber;
+    }
+
+    private static String suffix(String index) {
+        return index.substring(index.lastIndexOf('_') + 1);
+    }
+
+    private static long pow10(int width) {
+        long result = 1;
+        for (int i = 0; i < width; i++) {
+            if (result > Integer.MAX_VALUE) {
+                return -1;
+            }
+            result *= 10;
+        }
+        return result;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        if (value <= 0 || divisor <= 0) {
+            return 0;
+        }
+        return (value + divisor - 1) / divisor;
+    }
+
+    public static class Request {
+
+        private final List<String> indices;
+
+        private final String renamePattern;
+
+        private final String renameReplacement;
+
+        private Request(List<String> indices, String renamePattern, String renameReplacement) {
+            this.indices = indices;
+            this.renamePattern = renamePattern;
+            this.renameReplacement = renameReplacement;
+        }
+
+        public List<String> getIndices() {
+            return indices;
+        }
+
+        public String getRenamePattern() {
+            return renamePattern;
+        }
+
+        public String getRenameReplacement() {
+            return renameReplacement;
+        }
+    }
+}
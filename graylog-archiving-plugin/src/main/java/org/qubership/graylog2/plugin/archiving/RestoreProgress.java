@@ -0,0 +1,156 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of recovery progress of all indices of one restore process.
+ */
+public class RestoreProgress {
+
+    public static final String STAGE_DONE = "DONE";
+
+    private final Map<String, IndexProgress> indices;
+
+    private final long recoveredBytes;
+
+    private final long totalBytes;
+
+    private final long estimatedMillisRemaining;
+
+    public RestoreProgress(Map<String, IndexProgress> indices, long startTime, long now) {
+        this.indices = Collections.unmodifiableMap(indices);
+        long recovered = 0;
+        long total = 0;
+        for (IndexProgress index : indices.values()) {
+            recovered += index.recoveredBytes;
+            total += index.totalBytes;
+        }
+        this.recoveredBytes = recovered;
+        this.totalBytes = total;
+        long elapsed = now - startTime;
+        if (recovered > 0 && elapsed > 0 && startTime > 0) {
+            this.estimatedMillisRemaining = (long) ((total - recovered) / ((double) recovered / elapsed));
+        } else {
+            this.estimatedMillisRemaining = -1;
+        }
+    }
+
+    public Map<String, IndexProgress> getIndices() {
+        return indices;
+    }
+
+    public long getRecoveredBytes() {
+        return recoveredBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Estimation based on the average recovery rate since the first shard started, -1 if it's unknown yet.
+     */
+    public long getEstimatedMillisRemaining() {
+        return estimatedMillisRemaining;
+    }
+
+    public boolean isDone() {
+        for (IndexProgress index : indices.values()) {
+            if (!index.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indices which are red and have no shard in recovery, so they won't become available by themselves.
+     */
+    public List<String> getStalledIndices() {
+        List<String> stalled = new ArrayList<>();
+        for (Map.Entry<String, IndexProgress> entry : indices.entrySet()) {
+            if (entry.getValue().isStalled()) {
+                stalled.add(entry.getKey());
+            }
+        }
+        return stalled;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("recoveredBytes", recoveredBytes);
+        json.put("totalBytes", totalBytes);
+        json.put("estimatedMillisRemaining", estimatedMillisRemaining);
+        JSONObject indicesJson = new JSONObject();
+        for (Map.Entry<String, IndexProgress> entry : indices.entrySet()) {
+            IndexProgress index = entry.getValue();
+            JSONObject indexJson = new JSONObject();
+            indexJson.put("restoredAs", index.restoredAs);
+            indexJson.put("stage", index.stage);
+            indexJson.put("health", index.health);
+            indexJson.put("shardsDone", index.shardsDone);
+            indexJson.put("shardsTotal", index.shardsTotal);
+            indexJson.put("recoveredBytes", index.recoveredBytes);
+            indexJson.put("totalBytes", index.totalBytes);
+            indicesJson.put(entry.getKey(), indexJson);
+        }
+        json.put("indices", indicesJson);
+        return json;
+    }
+
+    public static class IndexProgress {
+
+        private final String restoredAs;
+
+        private final String stage;
+
+        private final String health;
+
+        private final int shardsDone;
+
+        private final int shardsTotal;
+
+        private final long recoveredBytes;
+
+        private final long totalBytes;
+
+        public IndexProgress(String restoredAs, String stage, String health, int shardsDone, int shardsTotal,
+                             long recoveredBytes, long totalBytes) {
+            this.restoredAs = restoredAs;
+            this.stage = stage;
+            this.health = health;
+            this.shardsDone = shardsDone;
+            this.shardsTotal = shardsTotal;
+            this.recoveredBytes = recoveredBytes;
+            this.totalBytes = totalBytes;
+        }
+
+        public String getRestoredAs() {
+            return restoredAs;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public String getHealth() {
+            return health;
+        }
+
+        public boolean isDone() {
+            return shardsTotal > 0 && shardsDone == shardsTotal && "green".equals(health);
+        }
+
+        /**
+         * An index without any shard in the recovery API yet is still waiting for allocation, not stalled.
+         */
+        public boolean isStalled() {
+            return "red".equals(health) && shardsTotal > 0 && shardsDone == shardsTotal;
+        }
+    }
+}
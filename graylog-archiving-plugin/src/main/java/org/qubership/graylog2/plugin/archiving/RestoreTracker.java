@@ -0,0 +1,170 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.searchbox.core.Cat;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
+import org.qubership.graylog2.plugin.utils.Recovery;
+import org.qubership.graylog2.plugin.utils.WaitScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Follows restored indices through the recovery API. One _recovery and one _cat/indices request cover all
+ * restored_* indices, the responses are streamed and only shards of the indices of the process are read.
+ */
+@Singleton
+public class RestoreTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(RestoreTracker.class);
+
+    private static final String RESTORED_INDICES = "restored_*";
+
+    private static final long MAX_STALLED_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final WaitScheduler.Backoff BACKOFF = new WaitScheduler.Backoff(250, TimeUnit.SECONDS.toMillis(30),
+            TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+
+    private static final List<String> STAGES = Arrays.asList("INIT", "INDEX", "VERIFY_INDEX", "TRANSLOG", "FINALIZE",
+            RestoreProgress.STAGE_DONE);
+
+    private final ElasticsearchStreamReader streamReader;
+
+    private final WaitScheduler waitScheduler;
+
+    private final ObjectMapper objectMapper;
+
+    @Inject
+    public RestoreTracker(ElasticsearchStreamReader streamReader, WaitScheduler waitScheduler) {
+        this.streamReader = streamReader;
+        this.waitScheduler = waitScheduler;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Completes when every restored index is recovered. Fails if some index stays red without any shard
+     * in recovery for a minute or the restore takes longer than a day.
+     *
+     * @param restored original index name to restored index name
+     * @param listener receives every polled progress
+     */
+    public CompletableFuture<RestoreProgress> awaitCompletion(Map<String, String> restored, Consumer<RestoreProgress> listener) {
+        AtomicLong stalledSince = new AtomicLong();
+        return waitScheduler.await("restore of " + restored.values(), () -> {
+            RestoreProgress progress = getProgress(restored);
+            listener.accept(progress);
+            if (progress.isDone()) {
+                return progress;
+            }
+            List<String> stalled = progress.getStalledIndices();
+            if (stalled.isEmpty()) {
+                stalledSince.set(0);
+            } else if (stalledSince.get() == 0) {
+                stalledSince.set(System.currentTimeMillis());
+            } else if (System.currentTimeMillis() - stalledSince.get() >= MAX_STALLED_MILLIS) {
+                throw new RuntimeException("Health status of " + stalled + " is red and no shards are recovering!");
+            }
+            return null;
+        }, BACKOFF);
+    }
+
+    public RestoreProgress getProgress(Map<String, String> restored) throws IOException {
+        Map<String, List<JsonNode>> recoveries = streamReader.read(
+                new Recovery.Builder().addIndex(RESTORED_INDICES).build(),
+                parser -> readShards(parser, new HashSet<>(restored.values())));
+        List<ShortIndex> cat = streamReader.read(new Cat.IndicesBuilder()
+                .addIndex(RESTORED_INDICES)
+                .setParameter("h", "index,health")
+                .build(), ShortIndex::readList);
+        Map<String, String> health = new HashMap<>();
+        for (ShortIndex row : cat) {
+            health.put(row.getName(), row.getHealth());
+        }
+
+        Map<String, RestoreProgress.IndexProgress> indices = new LinkedHashMap<>();
+        long startTime = Long.MAX_VALUE;
+        for (Map.Entry<String, String> entry : restored.entrySet()) {
+            String restoredAs = entry.getValue();
+            int done = 0;
+            int total = 0;
+            long recoveredBytes = 0;
+            long totalBytes = 0;
+            int stage = STAGES.size() - 1;
+            for (JsonNode shard : recoveries.getOrDefault(restoredAs, Collections.emptyList())) {
+                total++;
+                int shardStage = STAGES.indexOf(shard.path("stage").asText());
+                if (shardStage == STAGES.size() - 1) {
+                    done++;
+                }
+                if (shardStage >= 0) {
+                    stage = Math.min(stage, shardStage);
+                }
+                JsonNode size = shard.path("index").path("size");
+                recoveredBytes += size.path("recovered_in_bytes").asLong();
+                totalBytes += size.path("total_in_bytes").asLong();
+                long shardStart = shard.path("start_time_in_millis").asLong();
+                if (shardStart > 0) {
+                    startTime = Math.min(startTime, shardStart);
+                }
+            }
+            indices.put(entry.getKey(), new RestoreProgress.IndexProgress(restoredAs,
+                    total == 0 ? STAGES.get(0) : STAGES.get(stage),
+                    health.getOrDefault(restoredAs, "unknown"),
+                    done, total, recoveredBytes, totalBytes));
+        }
+        RestoreProgress progress = new RestoreProgress(indices, startTime == Long.MAX_VALUE ? 0 : startTime,
+                System.currentTimeMillis());
+        log.debug("Restore progress: " + progress.getRecoveredBytes() + "/" + progress.getTotalBytes() + " bytes");
+        return progress;
+    }
+
+    /**
+     * Reads shards of the given indices from a _recovery response, other indices are skipped unparsed.
+     */
+    private Map<String, List<JsonNode>> readShards(JsonParser parser, Set<String> indices) throws IOException {
+        Map<String, List<JsonNode>> shards = new HashMap<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected _recovery response: " + parser.getCurrentToken());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String index = parser.getCurrentName();
+            parser.nextToken();
+            if (!indices.contains(index)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("shards".equals(field) && value == JsonToken.START_ARRAY) {
+                    List<JsonNode> indexShards = shards.computeIfAbsent(index, k -> new ArrayList<>());
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        indexShards.add(objectMapper.readTree(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return shards;
+    }
+}
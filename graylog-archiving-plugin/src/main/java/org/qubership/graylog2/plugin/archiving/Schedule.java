@@ -0,0 +1,133 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Archiving schedule created via /schedule. Immutable, every fire and every archive is stored as a new copy.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Schedule {
+
+    private final String name;
+
+    private final String storageId;
+
+    private final String period;
+
+    private final String time;
+
+    private final List<String> indices;
+
+    private final List<String> masks;
+
+    private final ScheduleRuns.OverlapPolicy overlap;
+
+    private final long creationTime;
+
+    private final Long lastFireTime;
+
+    private final Map<String, Long> archivedIndices;
+
+    @JsonCreator
+    public Schedule(@JsonProperty("name") String name,
+                    @JsonProperty("storageId") String storageId,
+                    @JsonProperty("period") String period,
+                    @JsonProperty("time") String time,
+                    @JsonProperty("indices") List<String> indices,
+                    @JsonProperty("masks") List<String> masks,
+                    @JsonProperty("overlap") ScheduleRuns.OverlapPolicy overlap,
+                    @JsonProperty("creationTime") long creationTime,
+                    @JsonProperty("lastFireTime") Long lastFireTime,
+                    @JsonProperty("archivedIndices") Map<String, Long> archivedIndices) {
+        this.name = name;
+        this.storageId = storageId;
+        this.period = period;
+        this.time = time;
+        this.indices = indices == null ? Collections.emptyList() : Collections.unmodifiableList(indices);
+        this.masks = masks == null ? Collections.emptyList() : Collections.unmodifiableList(masks);
+        // schedules stored before overlap policies queue one run
+        this.overlap = overlap == null ? ScheduleRuns.OverlapPolicy.QUEUE : overlap;
+        this.creationTime = creationTime;
+        this.lastFireTime = lastFireTime;
+        this.archivedIndices = archivedIndices == null ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new TreeMap<>(archivedIndices));
+    }
+
+    public Schedule fired(long fireTime) {
+        return new Schedule(name, storageId, period, time, indices, masks, overlap, creationTime, fireTime, archivedIndices);
+    }
+
+    public Schedule withArchivedIndices(Map<String, Long> archivedIndices) {
+        return new Schedule(name, storageId, period, time, indices, masks, overlap, creationTime, lastFireTime, archivedIndices);
+    }
+
+    @JsonProperty("name")
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty("storageId")
+    public String getStorageId() {
+        return storageId;
+    }
+
+    /**
+     * Quartz cron expression.
+     */
+    @JsonProperty("period")
+    public String getPeriod() {
+        return period;
+    }
+
+    @JsonProperty("time")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getTime() {
+        return time;
+    }
+
+    @JsonProperty("indices")
+    public List<String> getIndices() {
+        return indices;
+    }
+
+    @JsonProperty("masks")
+    public List<String> getMasks() {
+        return masks;
+    }
+
+    /**
+     * What a fire does while the archive of the previous run is still in progress.
+     */
+    @JsonProperty("overlap")
+    public ScheduleRuns.OverlapPolicy getOverlap() {
+        return overlap;
+    }
+
+    @JsonProperty("creationTime")
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @JsonProperty("lastFireTime")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getLastFireTime() {
+        return lastFireTime;
+    }
+
+    /**
+     * Indices archived by the schedule with their document count at that time, a run skips an index while
+     * its count is the same.
+     */
+    @JsonProperty("archivedIndices")
+    public Map<String, Long> getArchivedIndices() {
+        return archivedIndices;
+    }
+}
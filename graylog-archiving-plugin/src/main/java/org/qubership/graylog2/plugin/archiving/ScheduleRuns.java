@@ -0,0 +1,190 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs of every schedule since the start of this node. A schedule has at most one archive process at a
+ * time, a fire which comes while it's running is handled by the overlap policy of the schedule.
+ */
+@Singleton
+public class ScheduleRuns {
+
+    private static final int MAX_RUNS = 100;
+
+    public enum OverlapPolicy {
+        /**
+         * The fire is dropped.
+         */
+        SKIP,
+        /**
+         * The fire is dropped and recorded as covered by the running process.
+         */
+        COALESCE,
+        /**
+         * One run is started once the running process is finished, further fires are coalesced into it.
+         */
+        QUEUE;
+
+        public static OverlapPolicy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown overlap policy: " + value + ". Supported: skip, coalesce, queue", e);
+            }
+        }
+    }
+
+    public enum Outcome {
+        STARTED, SKIPPED, COALESCED, QUEUED, NOT_STARTED, FAILED
+    }
+
+    private final Map<String, State> states = new HashMap<>();
+
+    /**
+     * @return STARTED if the run has to be started now, the caller reports it with {@link #started} or
+     * {@link #notStarted}; otherwise how the fire was handled
+     */
+    public synchronized Outcome fire(String schedule, OverlapPolicy policy, long fireTime) {
+        State state = states.computeIfAbsent(schedule, name -> new State());
+        if (!state.running) {
+            state.running = true;
+            return Outcome.STARTED;
+        }
+        String running = state.process == null ? "the starting run" : "process " + state.process;
+        Run run;
+        if (policy == OverlapPolicy.SKIP) {
+            run = new Run(fireTime, Outcome.SKIPPED, state.process, "Skipped while " + running + " is in progress");
+        } else if (policy == OverlapPolicy.COALESCE) {
+            run = new Run(fireTime, Outcome.COALESCED, state.process, "Covered by " + running);
+        } else if (state.queuedFireTime == null) {
+            state.queuedFireTime = fireTime;
+            run = new Run(fireTime, Outcome.QUEUED, null, "Starts after " + running);
+        } else {
+            run = new Run(fireTime, Outcome.COALESCED, null, "Covered by the queued run");
+        }
+        state.add(run);
+        return run.getOutcome();
+    }
+
+    public synchronized void started(String schedule, long fireTime, String process) {
+        State state = states.computeIfAbsent(schedule, name -> new State());
+        state.process = process;
+        state.add(new Run(fireTime, Outcome.STARTED, process, null));
+    }
+
+    /**
+     * @return fire time of the queued run which has to be started now, null if there is none
+     */
+    public synchronized Long notStarted(String schedule, long fireTime, Outcome outcome, String message) {
+        State state = states.computeIfAbsent(schedule, name -> new State());
+        state.add(new Run(fireTime, outcome, null, message));
+        return finished(schedule);
+    }
+
+    /**
+     * @return fire time of the queued run which has to be started now, null if there is none
+     */
+    public synchronized Long finished(String schedule) {
+        State state = states.get(schedule);
+        if (state == null) {
+            return null;
+        }
+        state.process = null;
+        Long queued = state.queuedFireTime;
+        state.queuedFireTime = null;
+        state.running = queued != null;
+        return queued;
+    }
+
+    /**
+     * Runs of the schedule from the newest to the oldest.
+     */
+    public synchronized List<Run> getRuns(String schedule) {
+        State state = states.get(schedule);
+        return state == null ? Collections.emptyList() : new ArrayList<>(state.runs);
+    }
+
+    public synchronized void remove(String schedule) {
+        states.remove(schedule);
+    }
+
+    private static class State {
+
+        private final Deque<Run> runs = new ArrayDeque<>();
+
+        private boolean running;
+
+        private String process;
+
+        private Long queuedFireTime;
+
+        private void add(Run run) {
+            runs.addFirst(run);
+            if (runs.size() > MAX_RUNS) {
+                runs.removeLast();
+            }
+        }
+    }
+
+    public static class Run {
+
+        private final long fireTime;
+
+        private final Outcome outcome;
+
+        private final String processId;
+
+        private final String message;
+
+        private final long time;
+
+        Run(long fireTime, Outcome outcome, String processId, String message) {
+            this.fireTime = fireTime;
+            this.outcome = outcome;
+            this.processId = processId;
+            this.message = message;
+            this.time = System.currentTimeMillis();
+        }
+
+        @JsonProperty("fireTime")
+        public long getFireTime() {
+            return fireTime;
+        }
+
+        @JsonProperty("outcome")
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        @JsonProperty("processId")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public String getProcessId() {
+            return processId;
+        }
+
+        @JsonProperty("message")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * When the outcome was recorded, a queued run is started later than it was fired.
+         */
+        @JsonProperty("time")
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Archiving schedules kept in a JSON file, so they're registered in Quartz again after a restart. There
+ * are only a few schedules, the whole file is written to a temporary file and renamed on every change.
+ */
+@Singleton
+public class ScheduleStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleStore.class);
+
+    private static final String SCHEDULES_FILE = "/usr/share/graylog/data/config/schedules.json";
+
+    /**
+     * Former location among the archive info files, where it was taken for an archive named "schedules".
+     */
+    private static final String LEGACY_SCHEDULES_FILE = "/usr/share/graylog/data/archives/schedules.json";
+
+    private static final TypeReference<List<Schedule>> SCHEDULES_TYPE = new TypeReference<List<Schedule>>() {
+    };
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Schedule> schedules;
+
+    public ScheduleStore() {
+        this.file = Paths.get(SCHEDULES_FILE);
+        this.objectMapper = new ObjectMapper();
+        this.schedules = new LinkedHashMap<>();
+        load();
+    }
+
+    public synchronized Optional<Schedule> get(String name) {
+        return Optional.ofNullable(schedules.get(name));
+    }
+
+    public synchronized List<Schedule> getAll() {
+        return new ArrayList<>(schedules.values());
+    }
+
+    public synchronized void put(Schedule schedule) {
+        schedules.put(schedule.getName(), schedule);
+        save();
+    }
+
+    public synchronized void remove(String name) {
+        if (schedules.remove(name) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Remembers the fire time, a window after it which is missed while Graylog is down is run on start.
+     */
+    public synchronized void fired(String name, long fireTime) {
+        Schedule schedule = schedules.get(name);
+        if (schedule != null) {
+            schedules.put(name, schedule.fired(fireTime));
+            save();
+        }
+    }
+
+    /**
+     * Adds indices archived by a run of the schedule and forgets the ones which don't exist anymore.
+     */
+    public synchronized void archived(String name, Map<String, Long> indices, Set<String> existing) {
+        Schedule schedule = schedules.get(name);
+        if (schedule != null) {
+            Map<String, Long> archived = new HashMap<>(schedule.getArchivedIndices());
+            archived.putAll(indices);
+            archived.keySet().retainAll(existing);
+            schedules.put(name, schedule.withArchivedIndices(archived));
+            save();
+        }
+    }
+
+    /**
+     * Forgets the archived indices, so the next run of the schedule archives all of its indices again.
+     */
+    public synchronized boolean reset(String name) {
+        Schedule schedule = schedules.get(name);
+        if (schedule == null) {
+            return false;
+        }
+        schedules.put(name, schedule.withArchivedIndices(null));
+        save();
+        return true;
+    }
+
+    private void load() {
+        migrate();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (Schedule schedule : objectMapper.readValue(file.toFile(), SCHEDULES_TYPE)) {
+                schedules.put(schedule.getName(), schedule);
+            }
+            log.info("Loaded " + schedules.size() + " archiving schedules");
+        } catch (IOException e) {
+            log.error("Error during reading archiving schedules: " + e.getMessage(), e);
+        }
+    }
+
+    private void migrate() {
+        Path legacy = Paths.get(LEGACY_SCHEDULES_FILE);
+        if (Files.exists(file) || !Files.exists(legacy)) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Files.move(legacy, file);
+            log.info("Archiving schedules are moved from " + legacy + " to " + file);
+        } catch (IOException e) {
+            log.error("Error during moving archiving schedules from " + legacy + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void save() {
+        Collection<Schedule> values = new ArrayList<>(schedules.values());
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), values);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error during writing archiving schedules: " + e.getMessage(), e);
+            throw new RuntimeException("Error during writing archiving schedules." + "\n" +
+                    "Reason: " + e.getMessage(), e);
+        }
+    }
+}
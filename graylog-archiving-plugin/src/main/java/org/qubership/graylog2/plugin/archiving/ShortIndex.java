@@ -1,12 +1,30 @@
 package org.qubership.graylog2.plugin.archiving;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ShortIndex {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     @JsonProperty("index")
     private String name;
     @JsonProperty("creation.date")
     private long creationDate;
+    @JsonProperty("store.size")
+    private long storeSize;
+    @JsonProperty("docs.count")
+    private long docsCount;
+    @JsonProperty("health")
+    private String health;
 
     public String getName() {
         return name;
@@ -16,8 +34,38 @@ public class ShortIndex {
         return creationDate;
     }
 
+    public long getStoreSize() {
+        return storeSize;
+    }
+
+    /**
+     * Documents in the primary shards, unlike the store size it doesn't change on merges or replica moves.
+     */
+    public long getDocsCount() {
+        return docsCount;
+    }
+
+    public String getHealth() {
+        return health;
+    }
+
     public ShortIndex() {
         this.name = "";
         this.creationDate = 0L;
+        this.storeSize = 0L;
+    }
+
+    /**
+     * Reads a _cat/indices JSON response row by row.
+     */
+    public static List<ShortIndex> readList(JsonParser parser) throws IOException {
+        List<ShortIndex> indices = new ArrayList<>();
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Unexpected _cat/indices response: " + parser.getCurrentToken());
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            indices.add(MAPPER.readValue(parser, ShortIndex.class));
+        }
+        return indices;
     }
 }
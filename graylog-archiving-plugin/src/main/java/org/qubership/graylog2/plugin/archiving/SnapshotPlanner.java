@@ -0,0 +1,102 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Splits a selection of indices into several snapshots so that each one stays under
+ * the configured size limit. Sizes are taken from store.size of the index metadata cache.
+ */
+@Singleton
+public class SnapshotPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotPlanner.class);
+
+    private static final String PART_SUFFIX = "_part";
+
+    private final IndexMetadataCache indexMetadataCache;
+
+    private final ArchivingPluginConfiguration configuration;
+
+    @Inject
+    public SnapshotPlanner(IndexMetadataCache indexMetadataCache, ArchivingPluginConfiguration configuration) {
+        this.indexMetadataCache = indexMetadataCache;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns snapshot name to indices. A selection which fits into one snapshot keeps the archive name,
+     * bigger selections get names like archive_part1, archive_part2 and so on.
+     * The parts are bound to the archive by its info-file, not by their names.
+     */
+    public Map<String, Set<String>> plan(String archiveName, Set<String> indices) {
+        List<Set<String>> parts = split(indices, getStoreSizes(indices), configuration.getMaxSnapshotSizeBytes());
+        Map<String, Set<String>> snapshots = new LinkedHashMap<>();
+        if (parts.size() == 1) {
+            snapshots.put(archiveName, parts.get(0));
+        } else {
+            for (int i = 0; i < parts.size(); i++) {
+                snapshots.put(archiveName + PART_SUFFIX + (i + 1), parts.get(i));
+            }
+        }
+        log.info("Archive " + archiveName + " is split into " + snapshots.size() + " snapshot(s)");
+        return snapshots;
+    }
+
+    /**
+     * First-fit decreasing: the biggest indices are placed first into the first part with enough room left.
+     * An index bigger than the limit gets a part of its own.
+     */
+    private static List<Set<String>> split(Set<String> indices, Map<String, Long> sizes, long maxBytes) {
+        List<String> sorted = new ArrayList<>(indices);
+        sorted.sort((a, b) -> Long.compare(sizes.getOrDefault(b, 0L), sizes.getOrDefault(a, 0L)));
+        List<Set<String>> parts = new ArrayList<>();
+        List<Long> used = new ArrayList<>();
+        for (String index : sorted) {
+            long size = sizes.getOrDefault(index, 0L);
+            int target = -1;
+            for (int i = 0; i < parts.size(); i++) {
+                if (used.get(i) + size <= maxBytes) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                parts.add(new TreeSet<>());
+                used.add(0L);
+                target = parts.size() - 1;
+            }
+            parts.get(target).add(index);
+            used.set(target, used.get(target) + size);
+        }
+        if (parts.isEmpty()) {
+            parts.add(new TreeSet<>());
+        }
+        return parts;
+    }
+
+    /**
+     * The selected indices may still be written to, so their sizes are refreshed before planning.
+     */
+    private Map<String, Long> getStoreSizes(Set<String> indices) {
+        try {
+            indexMetadataCache.invalidate(indices);
+            return indexMetadataCache.getStoreSizes(indices);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't get index sizes, archive will be created as a single snapshot: " + e.getMessage(), e);
+            return Collections.emptyMap();
+        }
+    }
+}
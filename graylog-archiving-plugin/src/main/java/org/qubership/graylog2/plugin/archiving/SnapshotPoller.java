@@ -0,0 +1,160 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.snapshot.SnapshotStatus;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
+import org.qubership.graylog2.plugin.utils.SnapshotSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks snapshots started with wait_for_completion=false. All pending snapshots share one poller thread
+ * which asks _snapshot/{repo}/{names}/_status once per repository on every tick.
+ */
+@Singleton
+public class SnapshotPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotPoller.class);
+
+    private static final long POLL_INTERVAL_SECONDS = 5;
+
+    private static final int MAX_FAILED_POLLS = 12;
+
+    private static final String STATE_SUCCESS = "SUCCESS";
+
+    private final ElasticsearchStreamReader streamReader;
+
+    private final Map<String, PendingSnapshot> pending;
+
+    private final ScheduledExecutorService scheduler;
+
+    @Inject
+    public SnapshotPoller(ElasticsearchStreamReader streamReader) {
+        this.streamReader = streamReader;
+        this.pending = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("archiving-snapshot-poller-%d")
+                .setDaemon(true)
+                .build());
+        this.scheduler.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_SECONDS, POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers a running snapshot. The returned future completes when the snapshot reaches SUCCESS
+     * and completes exceptionally when it fails, is aborted or can't be polled anymore.
+     */
+    public CompletableFuture<Void> track(String repository, String snapshot) {
+        PendingSnapshot pendingSnapshot = new PendingSnapshot(repository, snapshot);
+        PendingSnapshot existing = pending.putIfAbsent(key(repository, snapshot), pendingSnapshot);
+        return existing == null ? pendingSnapshot.future : existing.future;
+    }
+
+    private void poll() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, List<PendingSnapshot>> byRepository = new HashMap<>();
+        for (PendingSnapshot snapshot : pending.values()) {
+            byRepository.computeIfAbsent(snapshot.repository, r -> new ArrayList<>()).add(snapshot);
+        }
+        for (Map.Entry<String, List<PendingSnapshot>> entry : byRepository.entrySet()) {
+            try {
+                pollRepository(entry.getKey(), entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                if (entry.getValue().size() == 1) {
+                    log.warn("Can't get status of snapshot " + entry.getValue().get(0).snapshot + " in repository "
+                            + entry.getKey() + ": " + e.getMessage(), e);
+                    registerFailedPoll(entry.getValue().get(0), e.getMessage());
+                } else {
+                    // one unknown snapshot fails the whole request, so the others are not failed because of it
+                    log.warn("Can't get status of snapshots in repository " + entry.getKey() + ", poll them one by one: "
+                            + e.getMessage());
+                    pollEach(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void pollEach(String repository, List<PendingSnapshot> snapshots) {
+        for (PendingSnapshot snapshot : snapshots) {
+            try {
+                pollRepository(repository, Collections.singletonList(snapshot));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't get status of snapshot " + snapshot.snapshot + " in repository " + repository + ": "
+                        + e.getMessage(), e);
+                registerFailedPoll(snapshot, e.getMessage());
+            }
+        }
+    }
+
+    private void pollRepository(String repository, List<PendingSnapshot> snapshots) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (PendingSnapshot snapshot : snapshots) {
+            names.add(snapshot.snapshot);
+        }
+        SnapshotStatus status = new SnapshotStatus
+                .Builder(repository)
+                .addSnapshot(names)
+                .build();
+        Map<String, SnapshotSummary> states = streamReader.read(status, SnapshotSummary::readAll);
+        for (PendingSnapshot snapshot : snapshots) {
+            SnapshotSummary summary = states.get(snapshot.snapshot);
+            String state = summary == null ? null : summary.getState();
+            if (state == null) {
+                registerFailedPoll(snapshot, "Snapshot is missing in status response");
+            } else if (STATE_SUCCESS.equals(state)) {
+                pending.remove(key(repository, snapshot.snapshot));
+                snapshot.future.complete(null);
+            } else if ("FAILED".equals(state) || "ABORTED".equals(state) || "PARTIAL".equals(state)) {
+                pending.remove(key(repository, snapshot.snapshot));
+                snapshot.future.completeExceptionally(new RuntimeException("Snapshot " + snapshot.snapshot
+                        + " finished with state " + state));
+            } else {
+                snapshot.failedPolls = 0;
+            }
+        }
+    }
+
+    private void registerFailedPoll(PendingSnapshot snapshot, String reason) {
+        if (++snapshot.failedPolls >= MAX_FAILED_POLLS) {
+            pending.remove(key(snapshot.repository, snapshot.snapshot));
+            snapshot.future.completeExceptionally(new RuntimeException("Can't get status of snapshot "
+                    + snapshot.snapshot + ". Reason: " + reason));
+        }
+    }
+
+    private static String key(String repository, String snapshot) {
+        return repository + "/" + snapshot;
+    }
+
+    private static class PendingSnapshot {
+
+        private final String repository;
+
+        private final String snapshot;
+
+        private final CompletableFuture<Void> future;
+
+        private int failedPolls;
+
+        private PendingSnapshot(String repository, String snapshot) {
+            this.repository = repository;
+            this.snapshot = snapshot;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterables;
+import io.searchbox.core.Search;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the oldest and the newest message timestamp of every index with one size=0 search per batch of
+ * indices: a terms aggregation on _index with min/max of the Graylog timestamp field.
+ */
+@Singleton
+public class TimestampRangeCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(TimestampRangeCollector.class);
+
+    private static final String TIMESTAMP_FIELD = "timestamp";
+
+    private static final int INDICES_PER_REQUEST = 50;
+
+    private final ElasticsearchStreamReader streamReader;
+
+    private final ObjectMapper objectMapper;
+
+    @Inject
+    public TimestampRangeCollector(ElasticsearchStreamReader streamReader) {
+        this.streamReader = streamReader;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Returns index name to its timestamp range. Empty indices and indices of failed requests are missing,
+     * such indices are treated as matching any time window on restore.
+     */
+    public Map<String, Range> collect(Collection<String> indices) {
+        Map<String, Range> ranges = new HashMap<>();
+        for (List<String> batch : Iterables.partition(indices, INDICES_PER_REQUEST)) {
+            try {
+                Search search = new Search.Builder(query(batch.size()))
+                        .addIndex(batch)
+                        .build();
+                ranges.putAll(streamReader.read(search, this::readRanges));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't get timestamp ranges of " + batch + ": " + e.getMessage(), e);
+            }
+        }
+        return ranges;
+    }
+
+    private static String query(int indices) {
+        return "{\"size\":0,\"aggs\":{\"indices\":{\"terms\":{\"field\":\"_index\",\"size\":" + indices + "},"
+                + "\"aggs\":{\"min\":{\"min\":{\"field\":\"" + TIMESTAMP_FIELD + "\"}},"
+                + "\"max\":{\"max\":{\"field\":\"" + TIMESTAMP_FIELD + "\"}}}}}}";
+    }
+
+    private Map<String, Range> readRanges(JsonParser parser) throws IOException {
+        Map<String, Range> ranges = new HashMap<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected search response: " + parser.getCurrentToken());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"aggregations".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            // one bucket per index of the batch, small enough to be read as a tree
+            JsonNode aggregations = objectMapper.readTree(parser);
+            for (JsonNode bucket : aggregations.path("indices").path("buckets")) {
+                JsonNode min = bucket.path("min").path("value");
+                JsonNode max = bucket.path("max").path("value");
+                if (min.isNumber() && max.isNumber()) {
+                    ranges.put(bucket.path("key").asText(), new Range(min.asLong(), max.asLong()));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    public static class Range {
+
+        private final long min;
+
+        private final long max;
+
+        public Range(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -5,11 +5,14 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.graylog2.plugin.rest.PluginRestResource;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.quartz.SchedulerException;
 import org.qubership.graylog2.plugin.archiving.ArchiveInfo;
 import org.qubership.graylog2.plugin.archiving.ArchivingService;
+import org.qubership.graylog2.plugin.archiving.BatchOperation;
+import org.qubership.graylog2.plugin.archiving.ScheduleRuns;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,10 +20,15 @@ import javax.inject.Inject;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Graylog url: https://{graylog-server-url}/api/plugins/org.qubership.graylog2.plugin/{rest-api}
@@ -32,6 +40,10 @@ public class ArchivingResource implements PluginRestResource {
 
     private static final Logger log = LoggerFactory.getLogger(ArchivingResource.class);
     private static final String DEFAULT_REGION = "us-east-1";
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_BATCH_OPERATIONS = 1000;
+    private static final int MAX_WAIT_SECONDS = 300;
 
     private final ArchivingService archivingService;
 
@@ -43,20 +55,100 @@ public class ArchivingResource implements PluginRestResource {
     @GET
     @Path("/process/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    @ApiOperation(value = "Get information about archive process")
-    public Response getArchiveProcessInfo(@ApiParam(name = "id") @PathParam("id") @NotEmpty String id) {
-        ArchiveInfo archiveProcessInfo = archivingService.getArchiveProcessInfo(id);
-        if (archiveProcessInfo == null) {
-            return Response.serverError().entity("Archive process is not found!").build();
-        } else {
-            JSONObject jsonObject = new JSONObject();
-            jsonObject.put("id", archiveProcessInfo.getId());
-            jsonObject.put("startTime", archiveProcessInfo.getStartTime().toString());
-            jsonObject.put("status", archiveProcessInfo.getStatus());
-            if (archiveProcessInfo.getResult() != null) {
-                jsonObject.put("result", archiveProcessInfo.getResult());
+    @ApiOperation(value = "Get information about archive process",
+            notes = "With waitFor the response is sent once the process is in this state or finished, "
+                    + "or when the timeout (seconds) expires")
+    public void getArchiveProcessInfo(@ApiParam(name = "id") @PathParam("id") @NotEmpty String id,
+                                      @ApiParam(name = "waitFor") @QueryParam("waitFor") String waitFor,
+                                      @ApiParam(name = "timeout") @QueryParam("timeout") @DefaultValue("30") int timeout,
+                                      @Suspended AsyncResponse asyncResponse) {
+        ArchiveInfo.State state;
+        try {
+            state = waitFor == null ? null : ArchiveInfo.State.valueOf(waitFor.toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            asyncResponse.resume(Response.serverError().entity("Unknown process state: " + waitFor).build());
+            return;
+        }
+        if (timeout < 1 || timeout > MAX_WAIT_SECONDS) {
+            asyncResponse.resume(Response.serverError()
+                    .entity("Parameter 'timeout' must be between 1 and " + MAX_WAIT_SECONDS + "!").build());
+            return;
+        }
+        ArchiveInfo info = archivingService.getArchiveProcessInfo(id);
+        if (state == null || info == null) {
+            JSONObject process = archivingService.findProcess(id);
+            if (process == null) {
+                asyncResponse.resume(Response.serverError().entity("Archive process is not found!").build());
+            } else {
+                asyncResponse.resume(Response.ok(process.toString()).build());
+            }
+            return;
+        }
+        Consumer<ArchiveInfo> listener = new Consumer<ArchiveInfo>() {
+            @Override
+            public void accept(ArchiveInfo changed) {
+                if (changed.getState() == state || changed.isFinished()) {
+                    changed.removeListener(this);
+                    asyncResponse.resume(Response.ok(changed.toJson().toString()).build());
+                }
             }
-            return Response.ok(jsonObject.toString()).build();
+        };
+        asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
+        asyncResponse.setTimeoutHandler(response -> {
+            info.removeListener(listener);
+            response.resume(Response.ok(info.toJson().toString()).build());
+        });
+        info.addListener(listener);
+        // the process could change before the listener was added
+        listener.accept(info);
+    }
+
+    @GET
+    @Path("/process/{id}/events")
+    @Produces(ProcessEventStream.MEDIA_TYPE)
+    @ApiOperation(value = "Stream changes of archive process as Server-Sent Events")
+    public void streamArchiveProcessInfo(@ApiParam(name = "id") @PathParam("id") @NotEmpty String id,
+                                         @HeaderParam("Last-Event-ID") String lastEventId,
+                                         @Suspended AsyncResponse asyncResponse) {
+        ArchiveInfo info = archivingService.getArchiveProcessInfo(id);
+        if (info != null) {
+            ProcessEventStream.poll(info, lastEventId, asyncResponse);
+            return;
+        }
+        JSONObject process = archivingService.findProcess(id);
+        if (process == null) {
+            asyncResponse.resume(Response.serverError().entity("Archive process is not found!").build());
+            return;
+        }
+        // the process is already in the history, so it's finished and there is only one event
+        asyncResponse.resume(ProcessEventStream.finished(process, lastEventId));
+    }
+
+    @GET
+    @Path("/process")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "List archive, restore and delete processes")
+    public Response listProcesses(@ApiParam(name = "offset") @QueryParam("offset") @DefaultValue("0") int offset,
+                                  @ApiParam(name = "limit") @QueryParam("limit") @DefaultValue("50") int limit,
+                                  @ApiParam(name = "state") @QueryParam("state") String state,
+                                  @ApiParam(name = "type") @QueryParam("type") String type,
+                                  @ApiParam(name = "from") @QueryParam("from") Long from,
+                                  @ApiParam(name = "to") @QueryParam("to") Long to) {
+        if (offset < 0) {
+            return Response.serverError().entity("Parameter 'offset' can't be negative!").build();
+        } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Response.serverError().entity("Parameter 'limit' must be between 1 and " + MAX_PAGE_SIZE + "!").build();
+        }
+        try {
+            ArchiveInfo.State processState = state == null ? null : ArchiveInfo.State.valueOf(state.toUpperCase());
+            ArchiveInfo.Type processType = type == null ? null : ArchiveInfo.Type.valueOf(type.toUpperCase());
+            return Response.ok(archivingService.listProcesses(processState, processType, from, to, offset, limit)
+                    .toString()).build();
+        } catch (IllegalArgumentException exception) {
+            return Response.serverError().entity("Unknown process state or type. Reason: " + exception.getMessage()).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
         }
     }
 
@@ -74,6 +166,38 @@ public class ArchivingResource implements PluginRestResource {
         }
     }
 
+    @POST
+    @Path("/schedule/{id}/reset")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Forget indices archived by the job, so its next run archives all of them")
+    public Response resetSchedule(@ApiParam(name = "id") @PathParam("id") @NotEmpty String id) {
+        try {
+            if (!archivingService.resetSchedule(id)) {
+                return Response.serverError().entity("Scheduled job is not found!").build();
+            }
+            return Response.ok(true).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
+    @GET
+    @Path("/schedule/{id}/runs")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Get runs of the scheduled job on this node, including skipped and coalesced fires")
+    public Response scheduleRuns(@ApiParam(name = "id") @PathParam("id") @NotEmpty String id) {
+        try {
+            if (!archivingService.getSchedule(id).isPresent()) {
+                return Response.serverError().entity("Scheduled job is not found!").build();
+            }
+            return Response.ok(archivingService.getScheduleRuns(id)).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
     @POST
     @Path("/schedule")
     @Produces(MediaType.APPLICATION_JSON)
@@ -88,6 +212,7 @@ public class ArchivingResource implements PluginRestResource {
             List<String> prefixes = archivingService.parametersProcessor.getList(jsonObject, "prefixes");
             String name = archivingService.parametersProcessor.getString(jsonObject, "name");
             String stream = archivingService.parametersProcessor.getString(jsonObject, "storageId");
+            String overlap = archivingService.parametersProcessor.getString(jsonObject, "overlap");
             if (name == null) {
                 log.error("Job name is null");
                 return Response.serverError().entity("Parameter 'name' is required!").build();
@@ -101,7 +226,8 @@ public class ArchivingResource implements PluginRestResource {
                 log.error("There is no criteria for archiving");
                 return Response.serverError().entity("There is no criteria for archiving!").build();
             } else {
-                return Response.ok(archivingService.schedule(time, stream, name, indices, period, prefixes)).build();
+                return Response.ok(archivingService.schedule(time, stream, name, indices, period, prefixes,
+                        overlap == null ? ScheduleRuns.OverlapPolicy.QUEUE : ScheduleRuns.OverlapPolicy.parse(overlap))).build();
             }
         } catch (JSONException exception) {
             log.error("The input json is invalid. " + "Reason: " + exception.getMessage() + ". " + "JSON=[" + jsonData + "]", exception);
@@ -165,6 +291,56 @@ public class ArchivingResource implements PluginRestResource {
         }
     }
 
+    @GET
+    @Path("/archives")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "List archives from the catalog")
+    public Response listArchives(@ApiParam(name = "offset") @QueryParam("offset") @DefaultValue("0") int offset,
+                                 @ApiParam(name = "limit") @QueryParam("limit") @DefaultValue("50") int limit,
+                                 @ApiParam(name = "index") @QueryParam("index") String index,
+                                 @ApiParam(name = "from") @QueryParam("from") Long from,
+                                 @ApiParam(name = "to") @QueryParam("to") Long to) {
+        if (offset < 0) {
+            return Response.serverError().entity("Parameter 'offset' can't be negative!").build();
+        } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Response.serverError().entity("Parameter 'limit' must be between 1 and " + MAX_PAGE_SIZE + "!").build();
+        }
+        try {
+            return Response.ok(archivingService.findArchives(index, from, to, offset, limit)).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
+    @GET
+    @Path("/statistics")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Archiving throughput per repository")
+    public Response getStatistics(@ApiParam(name = "repository") @QueryParam("repository") String repository,
+                                  @ApiParam(name = "from") @QueryParam("from") Long from,
+                                  @ApiParam(name = "to") @QueryParam("to") Long to) {
+        try {
+            return Response.ok(archivingService.getStatistics(repository, from, to)).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
+    @POST
+    @Path("/archives/reconcile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Rebuild the archive catalog from snapshots of the repositories")
+    public Response reconcileArchives() {
+        try {
+            return Response.ok(archivingService.reconcileCatalog()).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
     @POST
     @Path("/restore/{archiveName}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -174,10 +350,14 @@ public class ArchivingResource implements PluginRestResource {
         try {
             JSONObject jsonObject = new JSONObject(jsonData);
             String stream = archivingService.parametersProcessor.getString(jsonObject, "storageId");
+            Long from = archivingService.parametersProcessor.getTime(jsonObject, "from");
+            Long to = archivingService.parametersProcessor.getTime(jsonObject, "to");
             if (stream == null) {
                 log.error("storageId name is null");
                 return Response.serverError().entity("Parameter 'storageId' is required!").build();
-            } else return Response.ok(archivingService.restore(stream, archiveName)).build();
+            } else if (from != null && to != null && from > to) {
+                return Response.serverError().entity("Parameter 'from' must not be after 'to'!").build();
+            } else return Response.ok(archivingService.restore(stream, archiveName, from, to)).build();
         } catch (Exception e) {
             log.error("An error has occurred during restore. " + "Reason: " + e.getMessage() + ". ", e);
             return Response.serverError().entity("Reason: " + e.getMessage()).build();
@@ -197,13 +377,83 @@ public class ArchivingResource implements PluginRestResource {
         }
     }
 
+    @POST
+    @Path("/batch")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Archive, restore and delete archives in one batch process")
+    public Response batch(@NotNull String jsonData) {
+        try {
+            JSONArray operationsJson = new JSONObject(jsonData).getJSONArray("operations");
+            if (operationsJson.length() == 0) {
+                return Response.serverError().entity("Parameter 'operations' must not be empty!").build();
+            } else if (operationsJson.length() > MAX_BATCH_OPERATIONS) {
+                return Response.serverError().entity("Batch can't have more than " + MAX_BATCH_OPERATIONS + " operations!").build();
+            }
+            List<BatchOperation> operations = new ArrayList<>();
+            for (int i = 0; i < operationsJson.length(); i++) {
+                JSONObject operation = operationsJson.getJSONObject(i);
+                String type = archivingService.parametersProcessor.getString(operation, "type");
+                String storageId = archivingService.parametersProcessor.getString(operation, "storageId");
+                String archiveName = archivingService.parametersProcessor.getString(operation, "name");
+                if (type == null || storageId == null || archiveName == null) {
+                    return Response.serverError().entity("Operation " + i + ": parameters 'type', 'storageId' and 'name' are required!").build();
+                }
+                if ("archive".equals(type)) {
+                    HashSet<String> indices = new HashSet<>(archivingService.parametersProcessor.getList(operation, "indices"));
+                    String time = archivingService.parametersProcessor.getString(operation, "time");
+                    List<String> prefixes = archivingService.parametersProcessor.getList(operation, "prefixes");
+                    indices.addAll(archivingService.getIndices(time, prefixes));
+                    if (indices.isEmpty()) {
+                        return Response.serverError().entity("Operation " + i + ": there are no indices for archiving!").build();
+                    }
+                    operations.add(BatchOperation.archive(storageId, archiveName, indices));
+                } else if ("restore".equals(type)) {
+                    Long from = archivingService.parametersProcessor.getTime(operation, "from");
+                    Long to = archivingService.parametersProcessor.getTime(operation, "to");
+                    if (from != null && to != null && from > to) {
+                        return Response.serverError().entity("Operation " + i + ": parameter 'from' must not be after 'to'!").build();
+                    }
+                    operations.add(BatchOperation.restore(storageId, archiveName, from, to));
+                } else if ("delete".equals(type)) {
+                    operations.add(BatchOperation.delete(storageId, archiveName));
+                } else {
+                    return Response.serverError().entity("Operation " + i + ": unknown type " + type + ". Supported: archive, restore, delete").build();
+                }
+            }
+            return Response.ok(archivingService.batch(operations)).build();
+        } catch (JSONException exception) {
+            log.error("The input json is invalid. " + "Reason: " + exception.getMessage() + ". " + "JSON=[" + jsonData + "]", exception);
+            return Response.serverError().entity("Invalid json syntax. Reason: " + exception.getMessage()).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
     @POST
     @Path("/settings/reload")
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(value = "Reload directories.json file")
     public Response reloadSettings() {
         try {
-            return Response.ok(archivingService.readDirectoriesFile()).build();
+            return Response.ok(archivingService.reloadDirectoriesFile()).build();
+        } catch (RuntimeException exception) {
+            log.error("Reason: " + exception.getMessage() + ". ", exception);
+            return Response.serverError().entity("Reason: " + exception.getMessage()).build();
+        }
+    }
+
+    @GET
+    @Path("/settings/health")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Get cached health of snapshot repositories")
+    public Response repositoryHealth(@ApiParam(name = "storageId") @QueryParam("storageId") String storageId) {
+        try {
+            if (storageId != null) {
+                return Response.ok(archivingService.checkRepository(storageId)).build();
+            }
+            return Response.ok(archivingService.getRepositoryHealth()).build();
         } catch (RuntimeException exception) {
             log.error("Reason: " + exception.getMessage() + ". ", exception);
             return Response.serverError().entity("Reason: " + exception.getMessage()).build();
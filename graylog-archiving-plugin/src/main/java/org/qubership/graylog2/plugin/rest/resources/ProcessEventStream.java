@@ -0,0 +1,82 @@
+package org.qubership.graylog2.plugin.rest.resources;
+
+import org.json.JSONObject;
+import org.qubership.graylog2.plugin.archiving.ArchiveInfo;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Server-Sent Events of one process served as a long poll: a response carries at most one event and ends,
+ * and EventSource reconnects by itself with the id of the last event it got. The response is sent right away
+ * if the process changed since that event, otherwise once it changes or the poll expires, so no worker
+ * waits for the changes. Changes made between two polls are coalesced into one event. Once the client has
+ * the final state the stream ends with 204, which stops EventSource from reconnecting.
+ */
+final class ProcessEventStream {
+
+    static final String MEDIA_TYPE = "text/event-stream";
+
+    private static final long POLL_SECONDS = 30;
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private static final String FINAL_EVENT_ID = "final";
+
+    private ProcessEventStream() {
+    }
+
+    static void poll(ArchiveInfo info, String lastEventId, AsyncResponse asyncResponse) {
+        long seen = parseEventId(lastEventId);
+        if (info.isFinished() && info.getVersion() == seen) {
+            asyncResponse.resume(Response.noContent().build());
+            return;
+        }
+        Consumer<ArchiveInfo> listener = new Consumer<ArchiveInfo>() {
+            @Override
+            public void accept(ArchiveInfo changed) {
+                if (changed.getVersion() != seen) {
+                    changed.removeListener(this);
+                    asyncResponse.resume(Response.ok(event(changed.getVersion(), changed.toJson())).build());
+                }
+            }
+        };
+        asyncResponse.setTimeout(POLL_SECONDS, TimeUnit.SECONDS);
+        // a comment keeps proxies from treating the poll as failed, the client reconnects with the same id
+        asyncResponse.setTimeoutHandler(response -> {
+            info.removeListener(listener);
+            response.resume(Response.ok("retry: " + RECONNECT_MILLIS + "\n: keepalive\n\n").build());
+        });
+        info.addListener(listener);
+        // the process could change before the listener was added
+        listener.accept(info);
+    }
+
+    /**
+     * The only event of a process which is already in the history. It's sent again to a client which got
+     * an earlier event of the process while it was running.
+     */
+    static Response finished(JSONObject process, String lastEventId) {
+        if (FINAL_EVENT_ID.equals(lastEventId)) {
+            return Response.noContent().build();
+        }
+        return Response.ok(event(FINAL_EVENT_ID, process)).build();
+    }
+
+    private static String event(Object id, JSONObject process) {
+        return "retry: " + RECONNECT_MILLIS + "\nid: " + id + "\nevent: process\ndata: " + process + "\n\n";
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.qubership.graylog2.plugin.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Executes Jest actions on the HTTP client of the control Jest client and hands the response body to a
+ * {@link ResponseReader} as a stream of JSON tokens, so a response never has to be held as a String or a
+ * tree. Readers pull the fields they need and skip everything else. Requests are routed to the Elasticsearch
+ * nodes the same way as the Jest requests.
+ */
+@Singleton
+public class ElasticsearchStreamReader {
+
+    private final RoutingJestClient jestClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final JsonFactory jsonFactory;
+
+    @Inject
+    public ElasticsearchStreamReader(@Named("ArchivingControlJestClient") JestClient jestClient) {
+        if (!(jestClient instanceof RoutingJestClient)) {
+            throw new IllegalStateException("Streaming is not supported by " + jestClient.getClass().getName());
+        }
+        this.jestClient = (RoutingJestClient) jestClient;
+        this.objectMapper = new ObjectMapper();
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public <T> T read(Action<?> action, ResponseReader<T> reader) throws IOException {
+        return jestClient.route(server -> read(server, action, reader));
+    }
+
+    private <T> T read(String server, Action<?> action, ResponseReader<T> reader) throws IOException {
+        HttpUriRequest request = buildRequest(server, action);
+        try (CloseableHttpResponse response = jestClient.getHttpClient().execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status < 200 || status >= 300) {
+                throw new IOException(request.getMethod() + " " + request.getURI() + " failed with status " + status
+                        + ": " + (entity == null ? "" : EntityUtils.toString(entity)));
+            }
+            if (entity == null) {
+                throw new IOException(request.getMethod() + " " + request.getURI() + " returned an empty response");
+            }
+            try (InputStream content = entity.getContent();
+                 JsonParser parser = jsonFactory.createParser(content)) {
+                return reader.read(parser);
+            }
+        }
+    }
+
+    public <T> T readFile(Path path, ResponseReader<T> reader) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(path.toFile())) {
+            return reader.read(parser);
+        }
+    }
+
+    /**
+     * For responses which are already held as a String because they are stored as they are.
+     */
+    public <T> T read(String json, ResponseReader<T> reader) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return reader.read(parser);
+        }
+    }
+
+    private HttpUriRequest buildRequest(String server, Action<?> action) throws IOException {
+        String uri = action.getURI();
+        RequestBuilder builder = RequestBuilder.create(action.getRestMethodName())
+                .setUri(server + (uri.startsWith("/") ? uri : "/" + uri));
+        String data = action.getData(objectMapper);
+        if (data != null) {
+            builder.setEntity(new StringEntity(data, ContentType.APPLICATION_JSON));
+        }
+        for (Map.Entry<String, Object> header : action.getHeaders().entrySet()) {
+            builder.addHeader(header.getKey(), String.valueOf(header.getValue()));
+        }
+        return builder.build();
+    }
+
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+
+        /**
+         * @param parser parser positioned before the first token of the response
+         */
+        T read(JsonParser parser) throws IOException;
+    }
+}
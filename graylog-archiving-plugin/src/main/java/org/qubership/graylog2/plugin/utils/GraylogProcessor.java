@@ -2,8 +2,6 @@ package org.qubership.graylog2.plugin.utils;
 
 import com.google.common.collect.ImmutableMap;
 import io.searchbox.client.JestClient;
-import io.searchbox.core.Cat;
-import io.searchbox.core.CatResult;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.IndexSetRegistry;
@@ -19,9 +17,6 @@ import org.graylog2.shared.users.UserService;
 import org.graylog2.streams.StreamService;
 import org.graylog2.users.RoleService;
 import org.joda.time.Duration;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,11 +25,12 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Singleton
 public class GraylogProcessor {
@@ -43,14 +39,15 @@ public class GraylogProcessor {
 
     private static final String PATH = "/usr/share/graylog/data/archives/";
 
-    private static final String INDICES_DIR = "indices";
-
     private static final String ROLE = "AuditViewer";
 
     private static final String INDEX_SET_NAME = "Restored index set";
 
     private static final String STREAM_NAME = "Restored logs";
 
+    private static final WaitScheduler.Backoff INDEX_SET_BACKOFF = new WaitScheduler.Backoff(100, 5000,
+            TimeUnit.MINUTES.toMillis(5), TimeUnit.MILLISECONDS);
+
     private static final Logger log = LoggerFactory.getLogger(GraylogProcessor.class);
 
     private final IndexSetService indexSetService;
@@ -67,6 +64,10 @@ public class GraylogProcessor {
 
     private final JestClient jestClient;
 
+    private final WaitScheduler waitScheduler;
+
+    private final ElasticsearchStreamReader streamReader;
+
     @Inject
     public GraylogProcessor(IndexSetRegistry indexSetRegistry,
                             IndexSetService indexSetService,
@@ -74,7 +75,9 @@ public class GraylogProcessor {
                             UserService userService,
                             RoleService roleService,
                             FileProcessor fileProcessor,
-                            @Named("ArchivingJestClient") JestClient jestClient) {
+                            @Named("ArchivingJestClient") JestClient jestClient,
+                            WaitScheduler waitScheduler,
+                            ElasticsearchStreamReader streamReader) {
         this.indexSetRegistry = indexSetRegistry;
         this.indexSetService = indexSetService;
         this.streamService = streamService;
@@ -82,65 +85,44 @@ public class GraylogProcessor {
         this.roleService = roleService;
         this.fileProcessor = fileProcessor;
         this.jestClient = jestClient;
+        this.waitScheduler = waitScheduler;
+        this.streamReader = streamReader;
     }
 
-    public int getActiveWriteIndexNumber() {
+    /**
+     * Completes with the number of the active write index of the restored index set once the index set is up.
+     */
+    public CompletableFuture<Integer> getActiveWriteIndexNumber() {
         Set<IndexSet> all = indexSetRegistry.getAll();
         for (IndexSet entry : all) {
             if (entry.getConfig().indexPrefix().equals(RESTORED_INDEX_PREFIX)) {
                 Optional<IndexSet> optionalIndexSet = indexSetRegistry.get(entry.getConfig().id());
                 if (optionalIndexSet.isPresent()) {
                     IndexSet indexSet = optionalIndexSet.get();
-                    waitIndexSetIsUp(indexSet);
-                    String id = indexSet.getActiveWriteIndex();
-                    if (id != null) {
-                        return Integer.parseInt(indexSet.getActiveWriteIndex().split("_")[1]);
-                    }
+                    return waitScheduler.await("index set " + entry.getConfig().id() + " is up", () -> {
+                        if (!indexSet.isUp()) {
+                            return null;
+                        }
+                        String id = indexSet.getActiveWriteIndex();
+                        if (id == null) {
+                            throw new RuntimeException("Can't find active write index number");
+                        }
+                        return Integer.parseInt(id.split("_")[1]);
+                    }, INDEX_SET_BACKOFF);
                 }
             }
         }
-        throw new RuntimeException("Can't find active write index number");
-    }
-
-    private void waitIndexSetIsUp(IndexSet indexSet) {
-        while (!indexSet.isUp()) {
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
+        CompletableFuture<Integer> notFound = new CompletableFuture<>();
+        notFound.completeExceptionally(new RuntimeException("Can't find active write index number"));
+        return notFound;
     }
 
-    public List<String> getIndices(String snapshotStatus) {
-        try {
-            return new JSONObject(snapshotStatus)
-                    .getJSONArray("snapshots")
-                    .getJSONObject(0)
-                    .getJSONArray(INDICES_DIR)
-                    .toList()
-                    .stream()
-                    .map(Object::toString)
-                    .collect(Collectors.toList());
-        } catch (JSONException e) {
-            log.error("Can't get indices from JSON: " + e.getMessage(), e);
-            throw new RuntimeException("Error during getting indices from JSON." + "\n" +
-                    "Reason: " + e.getMessage(), e);
-        }
-    }
-
-    public void waitForCompletion(String index) throws InterruptedException, IOException {
-        Cat cat = new Cat.IndicesBuilder().addIndex(index).build();
-        CatResult result = jestClient.execute(cat);
-        String health = new JSONArray(result.getJsonString()).getJSONObject(0).getString("health");
-        while (!"green".equals(health)) {
-            TimeUnit.SECONDS.sleep(5);
-            result = jestClient.execute(cat);
-            health = new JSONArray(result.getJsonString()).getJSONObject(0).getString("health");
-            if (health.equals("red")) {
-                throw new RuntimeException("Health status of " + index + " is red!");
-            }
+    public Map<String, List<String>> getIndices(Map<String, SnapshotSummary> snapshots) {
+        Map<String, List<String>> indices = new LinkedHashMap<>();
+        for (SnapshotSummary snapshot : snapshots.values()) {
+            indices.put(snapshot.getName(), snapshot.getIndices());
         }
+        return indices;
     }
 
     public void prepareEnvironment() {
@@ -175,6 +157,49 @@ public class GraylogProcessor {
         return fileProcessor.readInfoFile(PATH, archiveName);
     }
 
+    /**
+     * Returns names of the snapshots which make up the archive. Archives created before splitting
+     * into parts (or without an info file) consist of one snapshot named as the archive.
+     */
+    public List<String> getArchiveSnapshots(String archiveName) {
+        if (!checkExisting(archiveName)) {
+            return Collections.singletonList(archiveName);
+        }
+        List<String> snapshots = new ArrayList<>(readInfoFileSnapshots(archiveName).keySet());
+        return snapshots.isEmpty() ? Collections.singletonList(archiveName) : snapshots;
+    }
+
+    /**
+     * Snapshots stored in the info-file of the archive.
+     */
+    public Map<String, SnapshotSummary> readInfoFileSnapshots(String archiveName) {
+        try {
+            Path infoFile = Paths.get(PATH, archiveName + FileProcessor.JSON);
+            return streamReader.readFile(infoFile, SnapshotSummary::readAll);
+        } catch (IOException e) {
+            log.error("Can't get snapshots from info-file: " + e.getMessage(), e);
+            throw new RuntimeException("Error during getting snapshots from info-file." + "\n" +
+                    "Reason: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Names of the archives which have an info-file.
+     */
+    public List<String> listArchives() {
+        try (java.util.stream.Stream<Path> files = Files.list(Paths.get(PATH))) {
+            List<String> names = new ArrayList<>();
+            files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.endsWith(FileProcessor.JSON))
+                    .forEach(file -> names.add(file.substring(0, file.length() - FileProcessor.JSON.length())));
+            return names;
+        } catch (IOException e) {
+            log.error("Error during listing info-files: " + e.getMessage(), e);
+            throw new RuntimeException("Error during listing info-files." + "\n" +
+                    "Reason: " + e.getMessage(), e);
+        }
+    }
+
     private Optional<String> getIndexSetId() {
         Set<IndexSet> all = indexSetRegistry.getAll();
         for (IndexSet indexSet : all) {
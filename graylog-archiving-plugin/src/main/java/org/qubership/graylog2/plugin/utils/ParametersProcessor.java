@@ -3,6 +3,7 @@ package org.qubership.graylog2.plugin.utils;
 import org.json.JSONObject;
 
 import javax.inject.Singleton;
+import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -27,4 +28,18 @@ public class ParametersProcessor {
             return jsonObject.get(key).toString();
         return null;
     }
+
+    /**
+     * Reads a time given as epoch millis or as an ISO-8601 date-time with offset (2020-12-21T15:00:00Z).
+     */
+    public Long getTime(JSONObject jsonObject, String key) {
+        if (!jsonObject.has(key)) {
+            return null;
+        }
+        Object value = jsonObject.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return OffsetDateTime.parse(value.toString()).toInstant().toEpochMilli();
+    }
 }
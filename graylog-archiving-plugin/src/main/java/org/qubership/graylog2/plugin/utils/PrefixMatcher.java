@@ -0,0 +1,55 @@
+package org.qubership.graylog2.plugin.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of index masks compiled into a prefix trie. A name is checked in one pass over its characters
+ * instead of calling startsWith for every mask.
+ */
+public class PrefixMatcher {
+
+    private final Node root;
+
+    private PrefixMatcher(Node root) {
+        this.root = root;
+    }
+
+    public static PrefixMatcher compile(Collection<String> masks) {
+        Node root = new Node();
+        for (String mask : masks) {
+            Node node = root;
+            for (int i = 0; i < mask.length() && !node.terminal; i++) {
+                node = node.children.computeIfAbsent(mask.charAt(i), c -> new Node());
+            }
+            node.terminal = true;
+            node.children.clear();
+        }
+        return new PrefixMatcher(root);
+    }
+
+    /**
+     * @return true if the name starts with at least one of the masks
+     */
+    public boolean matches(String name) {
+        Node node = root;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == name.length()) {
+                return false;
+            }
+            node = node.children.get(name.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private boolean terminal;
+    }
+}
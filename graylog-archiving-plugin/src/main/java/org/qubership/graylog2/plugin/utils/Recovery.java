@@ -0,0 +1,33 @@
+package org.qubership.graylog2.plugin.utils;
+
+import io.searchbox.action.AbstractMultiIndexActionBuilder;
+import io.searchbox.action.GenericResultAbstractAction;
+
+/**
+ * GET /{indices}/_recovery, Jest doesn't provide an action for the indices recovery API.
+ */
+public class Recovery extends GenericResultAbstractAction {
+
+    protected Recovery(Builder builder) {
+        super(builder);
+        setURI(buildURI());
+    }
+
+    @Override
+    public String getRestMethodName() {
+        return "GET";
+    }
+
+    @Override
+    protected String buildURI() {
+        return super.buildURI() + "/_recovery";
+    }
+
+    public static class Builder extends AbstractMultiIndexActionBuilder<Recovery, Builder> {
+
+        @Override
+        public Recovery build() {
+            return new Recovery(this);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.qubership.graylog2.plugin.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.client.http.JestHttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jest client which spreads requests over all Elasticsearch nodes. Nodes are checked in the background and
+ * a node which refuses a connection is skipped until it answers a check again. A request is moved to
+ * another node only if it could not connect, so a request which may have reached Elasticsearch is never
+ * sent twice.
+ */
+public class RoutingJestClient extends JestHttpClient {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingJestClient.class);
+
+    private static final int HEALTH_CHECK_TIMEOUT_MILLIS = 5000;
+
+    public enum Routing {
+        ROUND_ROBIN, LEAST_IN_FLIGHT;
+
+        public static Routing parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown Elasticsearch routing: " + value
+                        + ". Supported: round_robin, least_in_flight", e);
+            }
+        }
+    }
+
+    private final List<Node> nodes;
+
+    private final Routing routing;
+
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    private final ThreadLocal<String> currentServer = new ThreadLocal<>();
+
+    private final ThreadLocal<Node> pinnedNode = new ThreadLocal<>();
+
+    private final RequestConfig healthCheckConfig;
+
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param base    client created by JestClientFactory, its HTTP clients and settings are reused
+     * @param servers URLs of the nodes
+     */
+    public RoutingJestClient(JestHttpClient base, Collection<String> servers, Routing routing, int healthCheckSeconds) {
+        setHttpClient(base.getHttpClient());
+        setAsyncClient(base.getAsyncClient());
+        setRetryHandler(base.getRetryHandler());
+        setObjectMapper(base.getObjectMapper());
+        setHttpClientContextTemplate(base.getHttpClientContextTemplate());
+        setRequestCompressionEnabled(base.isRequestCompressionEnabled());
+        setServers(new LinkedHashSet<>(servers));
+        this.routing = routing;
+        this.nodes = new ArrayList<>();
+        for (String server : new LinkedHashSet<>(servers)) {
+            nodes.add(new Node(server.endsWith("/") ? server.substring(0, server.length() - 1) : server));
+        }
+        this.healthCheckConfig = RequestConfig.custom()
+                .setConnectTimeout(HEALTH_CHECK_TIMEOUT_MILLIS)
+                .setSocketTimeout(HEALTH_CHECK_TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(HEALTH_CHECK_TIMEOUT_MILLIS)
+                .build();
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("archiving-elasticsearch-health-%d")
+                .setDaemon(true)
+                .build());
+        this.healthChecker.scheduleWithFixedDelay(this::checkNodes, healthCheckSeconds, healthCheckSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public <T extends JestResult> T execute(Action<T> action, RequestConfig requestConfig) throws IOException {
+        return route(server -> {
+            currentServer.set(server);
+            try {
+                return super.execute(action, requestConfig);
+            } finally {
+                currentServer.remove();
+            }
+        });
+    }
+
+    @Override
+    public <T extends JestResult> void executeAsync(Action<T> action, JestResultHandler<? super T> handler,
+                                                    RequestConfig requestConfig) throws IOException {
+        Node node = select(Collections.emptySet());
+        node.inFlight.incrementAndGet();
+        currentServer.set(node.url);
+        try {
+            super.executeAsync(action, new JestResultHandler<T>() {
+                @Override
+                public void completed(T result) {
+                    node.inFlight.decrementAndGet();
+                    handler.completed(result);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    node.inFlight.decrementAndGet();
+                    if (isConnectionFailure(e)) {
+                        markDown(node, e);
+                    }
+                    handler.failed(e);
+                }
+            }, requestConfig);
+        } catch (IOException | RuntimeException e) {
+            node.inFlight.decrementAndGet();
+            throw e;
+        } finally {
+            currentServer.remove();
+        }
+    }
+
+    @Override
+    protected String getNextServer() {
+        String server = currentServer.get();
+        return server != null ? server : select(Collections.emptySet()).url;
+    }
+
+    /**
+     * Runs a request against a selected node and moves it to the next node if the connection fails.
+     */
+    public <T> T route(NodeCall<T> call) throws IOException {
+        Set<Node> tried = new HashSet<>();
+        while (true) {
+            Node node = select(tried);
+            node.inFlight.incrementAndGet();
+            try {
+                return call.call(node.url);
+            } catch (IOException e) {
+                if (!isConnectionFailure(e)) {
+                    throw e;
+                }
+                markDown(node, e);
+                tried.add(node);
+                if (tried.size() >= nodes.size()) {
+                    throw e;
+                }
+                log.warn("Elasticsearch node " + node.url + " is not reachable, retry on another node");
+            } finally {
+                node.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sends all requests made by the current thread inside the call to the same node, for example a
+     * sequence of requests of one long-running operation. The node is changed only if it goes down.
+     */
+    public <T> T pinned(NodeCall<T> call) throws IOException {
+        if (pinnedNode.get() != null) {
+            return call.call(pinnedNode.get().url);
+        }
+        Node node = select(Collections.emptySet());
+        pinnedNode.set(node);
+        try {
+            return call.call(node.url);
+        } finally {
+            pinnedNode.remove();
+        }
+    }
+
+    /**
+     * Selects the node for a sequence of requests whose steps run on different threads, every step passes it
+     * to {@link #pinned(String, NodeCall)}.
+     */
+    public String selectServer() {
+        return select(Collections.emptySet()).url;
+    }
+
+    /**
+     * Like {@link #pinned(NodeCall)}, but starts on the given node. A node which went down is replaced for
+     * this call only.
+     */
+    public <T> T pinned(String server, NodeCall<T> call) throws IOException {
+        Node node = null;
+        for (Node candidate : nodes) {
+            if (candidate.url.equals(server)) {
+                node = candidate;
+            }
+        }
+        if (node == null) {
+            return pinned(call);
+        }
+        Node previous = pinnedNode.get();
+        pinnedNode.set(node);
+        try {
+            return call.call(select(Collections.emptySet()).url);
+        } finally {
+            if (previous == null) {
+                pinnedNode.remove();
+            } else {
+                pinnedNode.set(previous);
+            }
+        }
+    }
+
+    private Node select(Set<Node> excluded) {
+        Node pinned = pinnedNode.get();
+        if (pinned != null && pinned.alive && !excluded.contains(pinned)) {
+            return pinned;
+        }
+        List<Node> candidates = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.alive && !excluded.contains(node)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // every node looks down, try the ones which were not tried yet rather than fail right away
+            for (Node node : nodes) {
+                if (!excluded.contains(node)) {
+                    candidates.add(node);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(nodes);
+        }
+        int start = Math.floorMod(nextNode.getAndIncrement(), candidates.size());
+        Node selected = candidates.get(start);
+        if (routing == Routing.LEAST_IN_FLIGHT) {
+            // starts from the round-robin position so equally loaded nodes still take turns
+            for (int i = 1; i < candidates.size(); i++) {
+                Node node = candidates.get((start + i) % candidates.size());
+                if (node.inFlight.get() < selected.inFlight.get()) {
+                    selected = node;
+                }
+            }
+        }
+        if (pinned != null) {
+            pinnedNode.set(selected);
+        }
+        return selected;
+    }
+
+    private void checkNodes() {
+        for (Node node : nodes) {
+            HttpHead request = new HttpHead(node.url + "/");
+            request.setConfig(healthCheckConfig);
+            boolean alive;
+            try (CloseableHttpResponse response = getHttpClient().execute(request)) {
+                alive = response.getStatusLine().getStatusCode() < 500;
+            } catch (IOException | RuntimeException e) {
+                alive = false;
+            }
+            if (alive && !node.alive) {
+                log.info("Elasticsearch node " + node.url + " is reachable again");
+            } else if (!alive && node.alive) {
+                log.warn("Elasticsearch node " + node.url + " failed the health check");
+            }
+            node.alive = alive;
+        }
+    }
+
+    private static void markDown(Node node, Exception e) {
+        if (node.alive) {
+            log.warn("Elasticsearch node " + node.url + " is marked as down: " + e.getMessage());
+        }
+        node.alive = false;
+    }
+
+    /**
+     * Jest wraps connection errors into CouldNotConnectException, so the causes are checked as well.
+     */
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CouldNotConnectException || cause instanceof ConnectException
+                    || cause instanceof ConnectTimeoutException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void shutdownClient() {
+        healthChecker.shutdownNow();
+        super.shutdownClient();
+    }
+
+    @FunctionalInterface
+    public interface NodeCall<T> {
+
+        /**
+         * @param server URL of the selected node without a trailing slash
+         */
+        T call(String server) throws IOException;
+    }
+
+    private static class Node {
+
+        private final String url;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private volatile boolean alive = true;
+
+        private Node(String url) {
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.qubership.graylog2.plugin.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fields of one snapshot taken from a _snapshot/{repo}/{names} or _snapshot/{repo}/{names}/_status
+ * response (or an info-file with such a response). Shard level details are skipped while reading.
+ */
+public class SnapshotSummary {
+
+    private String name;
+
+    private String state;
+
+    private List<String> indices = new ArrayList<>();
+
+    private long totalSizeBytes;
+
+    private long processedSizeBytes;
+
+    private long incrementalSizeBytes;
+
+    private long totalFileCount;
+
+    private long incrementalFileCount;
+
+    private long startTimeMillis;
+
+    private long timeMillis;
+
+    public String getName() {
+        return name;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public List<String> getIndices() {
+        return Collections.unmodifiableList(indices);
+    }
+
+    public long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    public long getProcessedSizeBytes() {
+        return processedSizeBytes;
+    }
+
+    /**
+     * Size of the files copied by this snapshot, files shared with older snapshots are not included.
+     */
+    public long getIncrementalSizeBytes() {
+        return incrementalSizeBytes;
+    }
+
+    public long getTotalFileCount() {
+        return totalFileCount;
+    }
+
+    public long getIncrementalFileCount() {
+        return incrementalFileCount;
+    }
+
+    /**
+     * Only _status responses have stats.
+     */
+    public boolean hasStats() {
+        return timeMillis > 0 || totalSizeBytes > 0;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Reads {"snapshots": [...]} and returns snapshot name to summary in the order of the response.
+     */
+    public static Map<String, SnapshotSummary> readAll(JsonParser parser) throws IOException {
+        Map<String, SnapshotSummary> snapshots = new LinkedHashMap<>();
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("snapshots".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    SnapshotSummary snapshot = read(parser);
+                    snapshots.put(snapshot.name, snapshot);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return snapshots;
+    }
+
+    private static SnapshotSummary read(JsonParser parser) throws IOException {
+        SnapshotSummary snapshot = new SnapshotSummary();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("snapshot".equals(field)) {
+                snapshot.name = parser.getValueAsString();
+            } else if ("state".equals(field)) {
+                snapshot.state = parser.getValueAsString();
+            } else if ("start_time_in_millis".equals(field)) {
+                snapshot.startTimeMillis = parser.getValueAsLong();
+            } else if ("indices".equals(field) && value == JsonToken.START_ARRAY) {
+                // _snapshot/{repo}/{names}: list of names
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    snapshot.indices.add(parser.getValueAsString());
+                }
+            } else if ("indices".equals(field) && value == JsonToken.START_OBJECT) {
+                // _status: index name to shard stats
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    snapshot.indices.add(parser.getCurrentName());
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            } else if ("stats".equals(field) && value == JsonToken.START_OBJECT) {
+                readStats(parser, snapshot);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Supports both the flat stats of Elasticsearch before 6.4 and the nested incremental/total/processed
+     * stats of later versions. The flat stats describe only the files copied by the snapshot, so they are
+     * used as both total and incremental values.
+     */
+    private static void readStats(JsonParser parser, SnapshotSummary snapshot) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            long[] stat;
+            switch (field) {
+                case "total":
+                    stat = readStat(parser, value);
+                    snapshot.totalFileCount = stat[0];
+                    snapshot.totalSizeBytes = stat[1];
+                    break;
+                case "incremental":
+                    stat = readStat(parser, value);
+                    snapshot.incrementalFileCount = stat[0];
+                    snapshot.incrementalSizeBytes = stat[1];
+                    break;
+                case "processed":
+                    snapshot.processedSizeBytes = readStat(parser, value)[1];
+                    break;
+                case "number_of_files":
+                    snapshot.totalFileCount = parser.getValueAsLong();
+                    snapshot.incrementalFileCount = snapshot.totalFileCount;
+                    break;
+                case "total_size_in_bytes":
+                    snapshot.totalSizeBytes = parser.getValueAsLong();
+                    snapshot.incrementalSizeBytes = snapshot.totalSizeBytes;
+                    break;
+                case "processed_size_in_bytes":
+                    snapshot.processedSizeBytes = parser.getValueAsLong();
+                    break;
+                case "start_time_in_millis":
+                    snapshot.startTimeMillis = parser.getValueAsLong();
+                    break;
+                case "time_in_millis":
+                    snapshot.timeMillis = parser.getValueAsLong();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads {"file_count": n, "size_in_bytes": n} as [file count, size].
+     */
+    private static long[] readStat(JsonParser parser, JsonToken value) throws IOException {
+        long[] stat = new long[2];
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return stat;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("file_count".equals(field)) {
+                stat[0] = parser.getValueAsLong();
+            } else if ("size_in_bytes".equals(field)) {
+                stat[1] = parser.getValueAsLong();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return stat;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected JSON: expected " + expected + " but got " + actual);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.qubership.graylog2.plugin.utils;
+
+import io.searchbox.snapshot.AbstractSnapshotRepositoryAction;
+
+/**
+ * POST /_snapshot/{repository}/_verify, Jest doesn't provide an action for the repository verification API.
+ */
+public class VerifyRepository extends AbstractSnapshotRepositoryAction {
+
+    protected VerifyRepository(Builder builder) {
+        super(builder);
+    }
+
+    @Override
+    public String getRestMethodName() {
+        return "POST";
+    }
+
+    @Override
+    protected String buildURI() {
+        return super.buildURI() + "/_verify";
+    }
+
+    public static class Builder extends SingleRepositoryBuilder<VerifyRepository, Builder> {
+
+        public Builder(String repository) {
+            super(repository);
+        }
+
+        @Override
+        public VerifyRepository build() {
+            return new VerifyRepository(this);
+        }
+    }
+}
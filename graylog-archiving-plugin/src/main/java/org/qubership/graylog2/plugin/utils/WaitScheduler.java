@@ -0,0 +1,147 @@
+package org.qubership.graylog2.plugin.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Times every pending wait of the plugin on one scheduler thread instead of sleeping on executor threads.
+ * A wait is re-checked with exponential backoff and jitter until the check returns a value, throws,
+ * passes its deadline or the returned future is cancelled. Checks send blocking requests, so they run on a
+ * separate pool and a slow check doesn't delay the other waits.
+ */
+@Singleton
+public class WaitScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(WaitScheduler.class);
+
+    private static final double JITTER = 0.2;
+
+    private static final int CHECK_THREADS = 4;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService checkExecutor;
+
+    public WaitScheduler() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("archiving-wait-scheduler-%d")
+                .setDaemon(true)
+                .build());
+        this.checkExecutor = Executors.newFixedThreadPool(CHECK_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("archiving-wait-check-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * @param name    used in logs and in the timeout message
+     * @param check   returns null while the condition is not met yet
+     * @param backoff delays between checks and the deadline
+     */
+    public <T> CompletableFuture<T> await(String name, Check<T> check, Backoff backoff) {
+        return await(name, check, backoff, checkExecutor);
+    }
+
+    /**
+     * @param executor runs the checks, for checks which block for long and would hold up the other waits
+     */
+    public <T> CompletableFuture<T> await(String name, Check<T> check, Backoff backoff, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long deadline = System.currentTimeMillis() + backoff.timeoutMillis;
+        schedule(new PendingWait<>(name, check, backoff, deadline, future, executor), backoff.initialDelayMillis);
+        return future;
+    }
+
+    private <T> void schedule(PendingWait<T> wait, long delayMillis) {
+        scheduler.schedule(() -> wait.executor.execute(() -> run(wait)), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private <T> void run(PendingWait<T> wait) {
+        if (wait.future.isDone()) {
+            return;
+        }
+        try {
+            T result = wait.check.poll();
+            if (result != null) {
+                wait.future.complete(result);
+                return;
+            }
+        } catch (Exception e) {
+            wait.future.completeExceptionally(e);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= wait.deadline) {
+            wait.future.completeExceptionally(new TimeoutException("Timeout while waiting for " + wait.name));
+            return;
+        }
+        wait.delayMillis = Math.min(wait.backoff.maxDelayMillis, wait.delayMillis * 2);
+        long jittered = (long) (wait.delayMillis * (1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+        long delay = Math.max(1, Math.min(jittered, wait.deadline - now));
+        log.debug("Wait for " + wait.name + " is re-checked in " + delay + " ms");
+        schedule(wait, delay);
+    }
+
+    @FunctionalInterface
+    public interface Check<T> {
+
+        /**
+         * @return the result of the wait or null if it should be checked again later
+         */
+        T poll() throws Exception;
+    }
+
+    public static class Backoff {
+
+        private final long initialDelayMillis;
+
+        private final long maxDelayMillis;
+
+        private final long timeoutMillis;
+
+        public Backoff(long initialDelay, long maxDelay, long timeout, TimeUnit unit) {
+            this.initialDelayMillis = unit.toMillis(initialDelay);
+            this.maxDelayMillis = unit.toMillis(maxDelay);
+            this.timeoutMillis = unit.toMillis(timeout);
+        }
+    }
+
+    private static class PendingWait<T> {
+
+        private final String name;
+
+        private final Check<T> check;
+
+        private final Backoff backoff;
+
+        private final long deadline;
+
+        private final CompletableFuture<T> future;
+
+        private final Executor executor;
+
+        private long delayMillis;
+
+        private PendingWait(String name, Check<T> check, Backoff backoff, long deadline, CompletableFuture<T> future,
+                            Executor executor) {
+            this.name = name;
+            this.check = check;
+            this.backoff = backoff;
+            this.deadline = deadline;
+            this.future = future;
+            this.executor = executor;
+            this.delayMillis = Math.max(1, backoff.initialDelayMillis);
+        }
+    }
+}
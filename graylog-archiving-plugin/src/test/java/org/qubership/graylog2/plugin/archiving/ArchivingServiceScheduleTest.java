@@ -0,0 +1,134 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.google.common.collect.ImmutableMap;
+import io.searchbox.client.JestClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qubership.graylog2.plugin.ArchivingPluginConfiguration;
+import org.qubership.graylog2.plugin.utils.ElasticsearchStreamReader;
+import org.qubership.graylog2.plugin.utils.GraylogProcessor;
+import org.qubership.graylog2.plugin.utils.ParametersProcessor;
+import org.qubership.graylog2.plugin.utils.TimeUnitProcessor;
+import org.quartz.Scheduler;
+import org.quartz.impl.SchedulerRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ArchivingServiceScheduleTest {
+
+    private static final String SCHEDULE = "daily";
+
+    private static final long WINDOW = 1_600_000_000_000L;
+
+    private static final String INDEX = "graylog_1";
+
+    private final ScheduleStore scheduleStore = mock(ScheduleStore.class);
+
+    private final IndexMetadataCache indexMetadataCache = mock(IndexMetadataCache.class);
+
+    private final ScheduleRuns scheduleRuns = new ScheduleRuns();
+
+    private final LocalJobLock jobLock = spy(new LocalJobLock());
+
+    private ArchivingService service;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new ArchivingService(mock(GraylogProcessor.class), mock(ParametersProcessor.class),
+                mock(TimeUnitProcessor.class), mock(JestClient.class), mock(JestClient.class),
+                mock(SnapshotPoller.class), mock(SnapshotPlanner.class), mock(RestoreTracker.class),
+                indexMetadataCache, mock(ElasticsearchStreamReader.class), mock(ArchiveCatalog.class),
+                mock(TimestampRangeCollector.class), mock(ProcessRegistry.class), mock(ArchivingMetrics.class),
+                mock(RepositoryRegistry.class), mock(RepositoryHealthCache.class), scheduleStore, scheduleRuns,
+                jobLock, mock(RepositoryCoordinator.class), new ArchivingPluginConfiguration());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Scheduler scheduler = SchedulerRepository.getInstance().lookup("ArchivingScheduler");
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void windowIsClaimedOnce() {
+        assertTrue(service.claimWindow(SCHEDULE, WINDOW));
+        assertFalse(service.claimWindow(SCHEDULE, WINDOW));
+        assertTrue(service.claimWindow(SCHEDULE, WINDOW + 1));
+    }
+
+    @Test
+    public void windowWithoutNewIndicesIsReleased() throws Exception {
+        Schedule schedule = schedule(ScheduleRuns.OverlapPolicy.QUEUE);
+        when(scheduleStore.get(SCHEDULE)).thenReturn(Optional.of(schedule));
+        when(indexMetadataCache.getDocsCounts(anyCollection())).thenReturn(ImmutableMap.of(INDEX, 10L));
+
+        assertTrue(service.claimWindow(SCHEDULE, WINDOW));
+        service.runSchedule(schedule, WINDOW);
+
+        List<ScheduleRuns.Run> runs = service.getScheduleRuns(SCHEDULE);
+        assertEquals(1, runs.size());
+        assertEquals(ScheduleRuns.Outcome.NOT_STARTED, runs.get(0).getOutcome());
+        assertEquals("Nothing to archive", runs.get(0).getMessage());
+        verify(jobLock).release(SCHEDULE, WINDOW);
+    }
+
+    @Test
+    public void removedIndexIsNotArchived() throws Exception {
+        Schedule schedule = schedule(ScheduleRuns.OverlapPolicy.QUEUE);
+        when(scheduleStore.get(SCHEDULE)).thenReturn(Optional.of(schedule));
+        when(indexMetadataCache.getDocsCounts(anyCollection())).thenReturn(Collections.emptyMap());
+
+        service.runSchedule(schedule, WINDOW);
+
+        assertEquals("Nothing to archive", service.getScheduleRuns(SCHEDULE).get(0).getMessage());
+        verify(indexMetadataCache).invalidate(anyCollection());
+    }
+
+    @Test
+    public void missingScheduleIsNotStarted() {
+        service.runSchedule(schedule(ScheduleRuns.OverlapPolicy.QUEUE), WINDOW);
+
+        assertEquals(ScheduleRuns.Outcome.NOT_STARTED, service.getScheduleRuns(SCHEDULE).get(0).getOutcome());
+        verify(jobLock).release(SCHEDULE, WINDOW);
+    }
+
+    @Test
+    public void skippedFireReleasesItsWindow() {
+        assertEquals(ScheduleRuns.Outcome.STARTED, scheduleRuns.fire(SCHEDULE, ScheduleRuns.OverlapPolicy.SKIP, WINDOW));
+
+        service.runSchedule(schedule(ScheduleRuns.OverlapPolicy.SKIP), WINDOW + 1);
+
+        assertEquals(ScheduleRuns.Outcome.SKIPPED, service.getScheduleRuns(SCHEDULE).get(0).getOutcome());
+        verify(jobLock).release(SCHEDULE, WINDOW + 1);
+    }
+
+    @Test
+    public void queuedFireKeepsItsWindow() {
+        assertEquals(ScheduleRuns.Outcome.STARTED, scheduleRuns.fire(SCHEDULE, ScheduleRuns.OverlapPolicy.QUEUE, WINDOW));
+
+        service.runSchedule(schedule(ScheduleRuns.OverlapPolicy.QUEUE), WINDOW + 1);
+
+        assertEquals(ScheduleRuns.Outcome.QUEUED, service.getScheduleRuns(SCHEDULE).get(0).getOutcome());
+        verify(jobLock, never()).release(SCHEDULE, WINDOW + 1);
+    }
+
+    private static Schedule schedule(ScheduleRuns.OverlapPolicy overlap) {
+        return new Schedule(SCHEDULE, "storage", "0 0 0 * * ?", null, Collections.singletonList(INDEX),
+                Collections.emptyList(), overlap, WINDOW, null, ImmutableMap.of(INDEX, 10L));
+    }
+}
@@ -0,0 +1,79 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalJobLockTest {
+
+    private static final long WINDOW = 1_600_000_000_000L;
+
+    private final LocalJobLock lock = new LocalJobLock();
+
+    @Test
+    public void windowIsClaimedOnce() {
+        assertTrue(lock.claim("daily", WINDOW));
+        assertFalse(lock.claim("daily", WINDOW));
+    }
+
+    @Test
+    public void laterWindowIsClaimed() {
+        assertTrue(lock.claim("daily", WINDOW));
+        assertTrue(lock.claim("daily", WINDOW + 1));
+    }
+
+    @Test
+    public void earlierWindowConflictsWithClaimedOne() {
+        assertTrue(lock.claim("daily", WINDOW));
+        assertFalse(lock.claim("daily", WINDOW - 1));
+    }
+
+    @Test
+    public void schedulesAreClaimedIndependently() {
+        assertTrue(lock.claim("daily", WINDOW));
+        assertTrue(lock.claim("hourly", WINDOW));
+    }
+
+    @Test
+    public void releasedWindowIsNotClaimedAgain() {
+        assertTrue(lock.claim("daily", WINDOW));
+        lock.release("daily", WINDOW);
+        assertFalse(lock.claim("daily", WINDOW));
+        assertFalse(lock.retryAt("daily", WINDOW).isPresent());
+    }
+
+    @Test
+    public void concurrentClaimsOfWindowHaveOneWinner() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> claims = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Callable<Boolean> claim = () -> {
+                    start.await();
+                    return lock.claim("daily", WINDOW);
+                };
+                claims.add(executor.submit(claim));
+            }
+            start.countDown();
+            int claimed = 0;
+            for (Future<Boolean> claim : claims) {
+                claimed += claim.get() ? 1 : 0;
+            }
+            assertEquals(1, claimed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.searchbox.client.JestResult;
+import org.junit.Test;
+import org.qubership.graylog2.plugin.utils.WaitScheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.qubership.graylog2.plugin.archiving.RepositoryCoordinator.Operation.DELETE;
+import static org.qubership.graylog2.plugin.archiving.RepositoryCoordinator.Operation.RESTORE;
+import static org.qubership.graylog2.plugin.archiving.RepositoryCoordinator.Operation.SNAPSHOT;
+
+public class RepositoryCoordinatorTest {
+
+    private static final String REPOSITORY = "graylog";
+
+    private static final String OTHER_REPOSITORY = "backup";
+
+    private final RepositoryCoordinator coordinator = new RepositoryCoordinator(new WaitScheduler());
+
+    @Test
+    public void deleteConflictsWithEveryOperationOnRepository() {
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, DELETE), acquire(REPOSITORY, SNAPSHOT, "a")));
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, DELETE), acquire(REPOSITORY, RESTORE)));
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, DELETE), acquire(REPOSITORY, DELETE)));
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, SNAPSHOT, "a"), acquire(REPOSITORY, DELETE)));
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, RESTORE), acquire(REPOSITORY, DELETE)));
+    }
+
+    @Test
+    public void deleteDoesNotConflictWithOtherRepository() {
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, DELETE), acquire(OTHER_REPOSITORY, DELETE)));
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, DELETE), acquire(OTHER_REPOSITORY, SNAPSHOT, "a")));
+    }
+
+    @Test
+    public void snapshotsConflictOnlyOnSharedIndices() {
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, SNAPSHOT, "a", "b"), acquire(REPOSITORY, SNAPSHOT, "b")));
+        assertFalse(startsWhileRunning(acquire(REPOSITORY, SNAPSHOT, "a"), acquire(OTHER_REPOSITORY, SNAPSHOT, "a")));
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, SNAPSHOT, "a"), acquire(REPOSITORY, SNAPSHOT, "b")));
+    }
+
+    @Test
+    public void restoreDoesNotConflictWithSnapshotOrRestore() {
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, RESTORE), acquire(REPOSITORY, RESTORE)));
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, RESTORE), acquire(REPOSITORY, SNAPSHOT, "a")));
+        assertTrue(startsWhileRunning(acquire(REPOSITORY, SNAPSHOT, "a"), acquire(REPOSITORY, RESTORE)));
+    }
+
+    @Test
+    public void waitingOperationsStartInOrder() {
+        RepositoryCoordinator.Permit snapshot = acquire(REPOSITORY, SNAPSHOT, "a").join();
+        CompletableFuture<RepositoryCoordinator.Permit> delete = acquire(REPOSITORY, DELETE);
+        CompletableFuture<RepositoryCoordinator.Permit> nextSnapshot = acquire(REPOSITORY, SNAPSHOT, "a");
+
+        snapshot.close();
+        assertTrue(delete.isDone());
+        assertFalse(nextSnapshot.isDone());
+
+        delete.join().close();
+        assertTrue(nextSnapshot.isDone());
+    }
+
+    @Test
+    public void operationOvertakesEarlierOneOnlyWhileItWaitsForOtherIndices() {
+        RepositoryCoordinator.Permit running = acquire(REPOSITORY, SNAPSHOT, "a").join();
+        CompletableFuture<RepositoryCoordinator.Permit> first = acquire(REPOSITORY, SNAPSHOT, "a", "b");
+        CompletableFuture<RepositoryCoordinator.Permit> second = acquire(REPOSITORY, SNAPSHOT, "b");
+        assertFalse(first.isDone());
+        assertTrue(second.isDone());
+
+        running.close();
+        assertFalse(first.isDone());
+        CompletableFuture<RepositoryCoordinator.Permit> third = acquire(REPOSITORY, SNAPSHOT, "b");
+        assertFalse(third.isDone());
+
+        second.join().close();
+        assertTrue(first.isDone());
+        assertFalse(third.isDone());
+        first.join().close();
+        assertTrue(third.isDone());
+    }
+
+    @Test
+    public void operationDoesNotOvertakeEarlierOneWaitingForSameIndices() {
+        RepositoryCoordinator.Permit running = acquire(REPOSITORY, SNAPSHOT, "a").join();
+        CompletableFuture<RepositoryCoordinator.Permit> first = acquire(REPOSITORY, SNAPSHOT, "a", "b");
+        CompletableFuture<RepositoryCoordinator.Permit> second = acquire(REPOSITORY, SNAPSHOT, "a");
+
+        running.close();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        first.join().close();
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void deleteWaitingForRestoreDoesNotHoldUpSnapshots() {
+        RepositoryCoordinator.Permit restore = acquire(REPOSITORY, RESTORE).join();
+        CompletableFuture<RepositoryCoordinator.Permit> delete = acquire(REPOSITORY, DELETE);
+        CompletableFuture<RepositoryCoordinator.Permit> snapshot = acquire(REPOSITORY, SNAPSHOT, "a");
+
+        assertFalse(delete.isDone());
+        assertTrue(snapshot.isDone());
+    }
+
+    @Test
+    public void deleteIsNotOvertakenOnceItsRunningOperationsAreFinished() {
+        RepositoryCoordinator.Permit restore = acquire(REPOSITORY, RESTORE).join();
+        CompletableFuture<RepositoryCoordinator.Permit> delete = acquire(REPOSITORY, DELETE);
+        RepositoryCoordinator.Permit snapshot = acquire(REPOSITORY, SNAPSHOT, "a").join();
+
+        restore.close();
+        assertFalse(delete.isDone());
+        CompletableFuture<RepositoryCoordinator.Permit> laterSnapshot = acquire(REPOSITORY, SNAPSHOT, "b");
+        assertFalse(laterSnapshot.isDone());
+
+        snapshot.close();
+        assertTrue(delete.isDone());
+        assertFalse(laterSnapshot.isDone());
+        delete.join().close();
+        assertTrue(laterSnapshot.isDone());
+    }
+
+    @Test
+    public void rejectedRequestIsRetriedOnGivenExecutor() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger executed = new AtomicInteger();
+        Executor executor = task -> {
+            executed.incrementAndGet();
+            task.run();
+        };
+        JestResult success = result(true, "{}");
+        CompletableFuture<JestResult> future = coordinator.execute("snapshot", executor,
+                () -> sent.incrementAndGet() == 1
+                        ? result(false, "{\"error\":{\"type\":\"concurrent_snapshot_execution_exception\"}}")
+                        : success);
+
+        assertSame(success, future.get(10, TimeUnit.SECONDS));
+        assertEquals(2, sent.get());
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void otherFailureIsNotRetried() {
+        AtomicInteger sent = new AtomicInteger();
+        JestResult failure = result(false, "{\"error\":{\"type\":\"snapshot_missing_exception\"}}");
+        CompletableFuture<JestResult> future = coordinator.execute("snapshot", Runnable::run, () -> {
+            sent.incrementAndGet();
+            return failure;
+        });
+
+        assertSame(failure, future.join());
+        assertEquals(1, sent.get());
+    }
+
+    private CompletableFuture<RepositoryCoordinator.Permit> acquire(String repository,
+                                                                   RepositoryCoordinator.Operation operation,
+                                                                   String... indices) {
+        List<String> names = indices.length == 0 ? Collections.emptyList() : Arrays.asList(indices);
+        return coordinator.acquire(repository, operation, names);
+    }
+
+    /**
+     * Closes both permits, so every check starts with no running operations.
+     */
+    private static boolean startsWhileRunning(CompletableFuture<RepositoryCoordinator.Permit> first,
+                                              CompletableFuture<RepositoryCoordinator.Permit> second) {
+        assertTrue(first.isDone());
+        boolean started = second.isDone();
+        first.join().close();
+        assertTrue(second.isDone());
+        second.join().close();
+        return started;
+    }
+
+    private static JestResult result(boolean succeeded, String json) {
+        JestResult result = new JestResult(new ObjectMapper());
+        result.setSucceeded(succeeded);
+        result.setJsonString(json);
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RestorePlanTest {
+
+    @Test
+    public void indicesWithSameSuffixWidthAreRestoredTogether() {
+        RestorePlan plan = RestorePlan.create(Arrays.asList("graylog_1", "graylog_2", "graylog_3"), 0);
+
+        assertEquals(1, plan.getRequests().size());
+        assertEquals("restored_11", plan.getRenamed().get("graylog_1"));
+        assertEquals("restored_12", plan.getRenamed().get("graylog_2"));
+        assertEquals("restored_13", plan.getRenamed().get("graylog_3"));
+        assertEquals(13, plan.getLastNumber());
+        assertRenamedByRequests(plan);
+    }
+
+    @Test
+    public void mixedSuffixWidthsAreRestoredInSeparateRequests() {
+        RestorePlan plan = RestorePlan.create(Arrays.asList("graylog_8", "graylog_9", "graylog_10", "graylog_11"), 0);
+
+        assertEquals(2, plan.getRequests().size());
+        assertEquals("restored_18", plan.getRenamed().get("graylog_8"));
+        assertEquals("restored_19", plan.getRenamed().get("graylog_9"));
+        assertEquals("restored_110", plan.getRenamed().get("graylog_10"));
+        assertEquals("restored_111", plan.getRenamed().get("graylog_11"));
+        assertEquals(111, plan.getLastNumber());
+        assertRenamedByRequests(plan);
+    }
+
+    @Test
+    public void restoredNumbersLieAboveLastNumber() {
+        RestorePlan plan = RestorePlan.create(Arrays.asList("graylog_1", "graylog_2"), 15);
+
+        assertEquals("restored_21", plan.getRenamed().get("graylog_1"));
+        assertEquals("restored_22", plan.getRenamed().get("graylog_2"));
+        assertEquals(22, plan.getLastNumber());
+        assertRenamedByRequests(plan);
+    }
+
+    @Test
+    public void singleIndicesAreRestoredOneByOne() {
+        RestorePlan plan = RestorePlan.create(Arrays.asList("graylog_7", "events"), 5);
+
+        assertEquals(2, plan.getRequests().size());
+        for (RestorePlan.Request request : plan.getRequests()) {
+            assertEquals(1, request.getIndices().size());
+            assertEquals("(.+)", request.getRenamePattern());
+        }
+        assertEquals("restored_6", plan.getRenamed().get("events"));
+        assertEquals("restored_7", plan.getRenamed().get("graylog_7"));
+        assertEquals(7, plan.getLastNumber());
+        assertRenamedByRequests(plan);
+    }
+
+    @Test
+    public void namesWithSeveralSegmentsAreGroupedByWholePrefix() {
+        List<String> indices = Arrays.asList("my_app_logs_1", "my_app_logs_2", "my_1", "my_2", "audit_2024_01",
+                "audit_2024_02");
+        RestorePlan plan = RestorePlan.create(indices, 0);
+
+        assertEquals(3, plan.getRequests().size());
+        for (RestorePlan.Request request : plan.getRequests()) {
+            String prefix = request.getIndices().get(0).substring(0, request.getIndices().get(0).lastIndexOf('_'));
+            for (String index : request.getIndices()) {
+                assertTrue(index.startsWith(prefix + "_"));
+            }
+        }
+        assertEquals(indices.size(), new HashSet<>(plan.getRenamed().values()).size());
+        assertRenamedByRequests(plan);
+    }
+
+    @Test
+    public void emptySnapshotKeepsLastNumber() {
+        RestorePlan plan = RestorePlan.create(Collections.emptyList(), 4);
+
+        assertTrue(plan.getRequests().isEmpty());
+        assertEquals(4, plan.getLastNumber());
+    }
+
+    /**
+     * Elasticsearch renames with java.util.regex, so applying the requests here gives the names it creates.
+     */
+    private static void assertRenamedByRequests(RestorePlan plan) {
+        Map<String, String> renamed = plan.getRenamed();
+        int restored = 0;
+        for (RestorePlan.Request request : plan.getRequests()) {
+            for (String index : request.getIndices()) {
+                assertEquals(renamed.get(index),
+                        index.replaceAll(request.getRenamePattern(), request.getRenameReplacement()));
+                restored++;
+            }
+        }
+        assertEquals(renamed.size(), restored);
+    }
+}
@@ -0,0 +1,48 @@
+package org.qubership.graylog2.plugin.archiving;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RestoreProgressTest {
+
+    @Test
+    public void indexWithoutAllocatedShardsIsNotStalled() {
+        RestoreProgress progress = progress("red", 0, 0);
+
+        assertFalse(progress.isDone());
+        assertTrue(progress.getStalledIndices().isEmpty());
+    }
+
+    @Test
+    public void redIndexWithoutRecoveringShardsIsStalled() {
+        RestoreProgress progress = progress("red", 2, 2);
+
+        assertFalse(progress.isDone());
+        assertEquals(Collections.singletonList("graylog_0"), progress.getStalledIndices());
+    }
+
+    @Test
+    public void yellowIndexIsNotDone() {
+        RestoreProgress progress = progress("yellow", 2, 2);
+
+        assertFalse(progress.isDone());
+        assertTrue(progress.getStalledIndices().isEmpty());
+    }
+
+    @Test
+    public void greenIndexWithRecoveredShardsIsDone() {
+        assertTrue(progress("green", 2, 2).isDone());
+        assertFalse(progress("green", 1, 2).isDone());
+    }
+
+    private static RestoreProgress progress(String health, int shardsDone, int shardsTotal) {
+        RestoreProgress.IndexProgress index = new RestoreProgress.IndexProgress("restored_1", "INDEX", health,
+                shardsDone, shardsTotal, 0, 0);
+        return new RestoreProgress(Collections.singletonMap("graylog_0", index), 0, 0);
+    }
+}
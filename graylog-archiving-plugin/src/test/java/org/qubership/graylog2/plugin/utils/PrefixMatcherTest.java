@@ -0,0 +1,88 @@
+package org.qubership.graylog2.plugin.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrefixMatcherTest {
+
+    private static final List<String> NAMES = Arrays.asList("", "g", "gray", "graylog", "graylog_0", "graylog_12",
+            "graylog_deflector", "gl-events_3", "gl-system-events_3", "restored_graylog_1", "other");
+
+    @Test
+    public void noMasksMatchNothing() {
+        assertAgrees(Collections.emptyList());
+        assertFalse(PrefixMatcher.compile(Collections.emptyList()).matches("graylog_0"));
+    }
+
+    @Test
+    public void emptyMaskMatchesEveryName() {
+        assertAgrees(Collections.singletonList(""));
+        assertAgrees(Arrays.asList("graylog_", ""));
+        assertTrue(PrefixMatcher.compile(Collections.singletonList("")).matches(""));
+    }
+
+    @Test
+    public void maskWhichIsPrefixOfAnotherMatchesBothWays() {
+        assertAgrees(Arrays.asList("gray", "graylog_1"));
+        assertAgrees(Arrays.asList("graylog_1", "gray"));
+        assertTrue(PrefixMatcher.compile(Arrays.asList("graylog_1", "gray")).matches("gray"));
+    }
+
+    @Test
+    public void nameShorterThanMaskDoesNotMatch() {
+        assertAgrees(Collections.singletonList("graylog_"));
+        assertFalse(PrefixMatcher.compile(Collections.singletonList("graylog_")).matches("graylog"));
+    }
+
+    @Test
+    public void masksWithCommonStemAreKeptApart() {
+        assertAgrees(Arrays.asList("gl-events_", "gl-system-events_", "graylog_1"));
+    }
+
+    @Test
+    public void agreesWithStartsWithOnRandomMasks() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> masks = new ArrayList<>();
+            for (int i = random.nextInt(6); i > 0; i--) {
+                masks.add(randomName(random, 4));
+            }
+            PrefixMatcher matcher = PrefixMatcher.compile(masks);
+            for (int i = 0; i < 50; i++) {
+                String name = randomName(random, 6);
+                assertEquals(masks + " " + name, expected(masks, name), matcher.matches(name));
+            }
+        }
+    }
+
+    private static void assertAgrees(List<String> masks) {
+        PrefixMatcher matcher = PrefixMatcher.compile(masks);
+        for (String name : NAMES) {
+            assertEquals(masks + " " + name, expected(masks, name), matcher.matches(name));
+        }
+    }
+
+    private static boolean expected(List<String> masks, String name) {
+        return masks.stream().anyMatch(name::startsWith);
+    }
+
+    /**
+     * Short names over a small alphabet, so masks often are prefixes of names and of each other.
+     */
+    private static String randomName(Random random, int maxLength) {
+        StringBuilder name = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            name.append("ab_".charAt(random.nextInt(3)));
+        }
+        return name.toString();
+    }
+}